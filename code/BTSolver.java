@@ -1,14 +1,13 @@
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.LinkedList;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.SplittableRandom;
 
-public class BTSolver
+public class BTSolver implements SudokuSolver
 {
 
 	// =================================================================
@@ -20,6 +19,70 @@ public class BTSolver
 	private Trail trail;
 
 	private boolean hasSolution = false;
+	private int solutionCount = 0;
+	private SudokuBoard firstSolution = null;
+
+	// Set once propagating the givens ran into a conflict: no search can
+	// find a solution then
+	private boolean givensFailed = false;
+
+	private SolverStatistics statistics = new SolverStatistics();
+	private int trailPushBaseline;
+
+	// Receives search events when set, see setSearchListener
+	private SearchListener listener = null;
+
+	// Conflict count per value, reused by every LCV ordering
+	private int[] valueConflicts;
+
+	// Variables changed and variables assigned by the current propagation.
+	// Variable i is marked when its stamp equals propagationEpoch, so every
+	// node reuses the arrays and starting over is just an increment.
+	private int[] modifiedStamp;
+	private int[] assignedStamp;
+	private int propagationEpoch = 0;
+
+	// Search stack, one choice point per decision level
+	private ChoicePoint[] choicePoints;
+
+	// Constraints containing a variable modified during the current
+	// forward checking pass. A constraint is listed when its stamp equals
+	// touchedEpoch, so resetting the list is just an increment.
+	private int[] touchedConstraints;
+	private int[] touchedStamp;
+	private int touchedEpoch = 0;
+	private int touchedCount = 0;
+
+	// Variable indices of each constraint, with per-value counters and the
+	// last place seen for a unit, built on first use by norvigCheck
+	private int[][] unitVariables;
+	private int[] valueCount;
+	private int[] valuePlace;
+
+	// Removal explanations and learned nogoods for conflictBackjumping,
+	// null in every other mode, with scratch space for building nogoods
+	private static final int NOGOOD_CAPACITY = 4096;
+	private static final int NOGOOD_MAX_LENGTH = 16;
+	private Explanations explanations;
+	private NogoodStore nogoods;
+	private int[] nogoodVariables;
+	private int[] nogoodValues;
+
+	// Restart schedule, and the generator breaking ties while it is set
+	private RestartPolicy restarts = null;
+	private SplittableRandom random = null;
+
+	// Failure weight of each constraint for dom/wdeg, built on first use
+	// by tournVar and bumped whenever propagation fails in the constraint
+	private int[] constraintWeights;
+
+	// Overlap tables and scratch space for subsetsCheck
+	private Overlap[][] overlaps;
+	private int positionWords;
+	private long[] positions;
+	private int[] subsetCandidates;
+	private int[] subsetPick;
+	private long[] subsetMask;
 
 	public String varHeuristics;
 	public String valHeuristics;
@@ -34,10 +97,26 @@ public class BTSolver
 		this.network    = new ConstraintNetwork( sboard );
 		this.sudokuGrid = sboard;
 		this.trail      = trail;
+		this.trailPushBaseline = trail.getPushCount();
+		this.touchedConstraints = new int[ network.getConstraints().size() ];
+		this.touchedStamp       = new int[ network.getConstraints().size() ];
+		this.choicePoints       = new ChoicePoint[ network.getVariables().size() + 1 ];
+		this.valueConflicts     = new int[ sboard.getN() + 1 ];
+		this.modifiedStamp      = new int[ network.getVariables().size() ];
+		this.assignedStamp      = new int[ network.getVariables().size() ];
 
 		varHeuristics = var_sh;
 		valHeuristics = val_sh;
 		cChecks       = cc;
+
+		if ( cc.equals( "conflictBackjumping" ) )
+		{
+			int numVariables = network.getVariables().size();
+			explanations    = new Explanations( network, sboard.getN() );
+			nogoods         = new NogoodStore( NOGOOD_CAPACITY, NOGOOD_MAX_LENGTH, numVariables, sboard.getN() );
+			nogoodVariables = new int[ NOGOOD_MAX_LENGTH ];
+			nogoodValues    = new int[ NOGOOD_MAX_LENGTH ];
+		}
 	}
 
 	// =================================================================
@@ -47,11 +126,7 @@ public class BTSolver
 	// Basic consistency check, no propagation done
 	private boolean assignmentsCheck ( )
 	{
-		for ( Constraint c : network.getConstraints() )
-			if ( ! c.isConsistent() )
-				return false;
-
-		return true;
+		return network.isConsistent();
 	}
 
 	// =================================================================
@@ -68,19 +143,20 @@ public class BTSolver
             {
                 if(LV.get(j).isAssigned())
                 {
-                    List<Variable> Neighbors = network.getNeighborsOfVariable(LV.get(j));
+                    int[] Neighbors = network.getPeers(LV.get(j));
                     int assignedValue = LV.get(j).getAssignment();
-                    for(int k = 0; k < Neighbors.size(); ++k)
+                    for(int k = 0; k < Neighbors.length; ++k)
                     {
-                        Domain D = Neighbors.get(k).getDomain();
+                        Variable N = network.getVariable(Neighbors[k]);
+                        Domain D = N.getDomain();
                         if(D.contains(assignedValue))
                         {
                             if(D.size() == 1)
                                 return false;
                             if(D.size() == 2)
-                                toAssign.add(Neighbors.get(k));
-                            trail.push(Neighbors.get(k));
-                            Neighbors.get(k).removeValueFromDomain(assignedValue);
+                                toAssign.add(N);
+                            trail.push(N);
+                            N.removeValueFromDomain(assignedValue);
                         }
                     }
                 }
@@ -91,9 +167,8 @@ public class BTSolver
             for(int i = 0; i < toAssign.size(); ++i)
             {
                 Domain D = toAssign.get(i).getDomain();
-                ArrayList<Integer> assign = D.getValues();
                 trail.push(toAssign.get(i));
-                toAssign.get(i).assignValue(assign.get(0));
+                toAssign.get(i).assignValue(D.first());
             }
             return arcConsistency();
         }
@@ -117,59 +192,114 @@ public class BTSolver
 	 */
 	public Map.Entry<HashMap<Variable,Domain>, Boolean> forwardChecking ( )
 	{
-		HashMap<Variable, Domain> modifiedVariableDomains = new HashMap<Variable, Domain>();
-		HashMap<Variable, Integer> assignedVariables = new HashMap<Variable, Integer>();
-		Boolean isConsistent = forwardCheckPropogation(modifiedVariableDomains, assignedVariables);
-		return Pair.of(modifiedVariableDomains, isConsistent);
+		Boolean isConsistent = runForwardChecking();
+		return Pair.of(markedDomains(modifiedStamp), isConsistent);
 	}
 
-	public Boolean forwardCheckPropogation(Map<Variable, Domain> modifiedVariables, Map<Variable, Integer> assignedVariables) {
+	// forwardChecking without building the map, as the search runs it
+	private boolean runForwardChecking ( )
+	{
+		propagationEpoch++;
+		return forwardCheckPropogation( modifiedStamp, assignedStamp );
+	}
 
-		List<Constraint> modifiedConstraints = network.getModifiedConstraints();
-		for (Constraint modifiedConstraint: modifiedConstraints) {
-			// find assigned Variables
-			List<Integer> assignedValues = new ArrayList<Integer>();
-			for (Variable variable: modifiedConstraint.vars) {
-				if (variable.isAssigned()) {
-					assignedValues.add(variable.getAssignment());	
-				}
+	/**
+	 * modifiedVariables and assignedVariables are stamp arrays indexed by
+	 * variable: a variable changed or assigned here gets propagationEpoch.
+	 */
+	public Boolean forwardCheckPropogation(int[] modifiedVariables, int[] assignedVariables) {
+
+		// Work only through the variables modified since the last propagation.
+		// Values removed here put their variables back on the worklist, so
+		// assignments made along the way are propagated in the same call.
+		touchedCount = 0;
+		touchedEpoch++;
+		for (int index = network.pollModifiedVariable(); index != -1; index = network.pollModifiedVariable()) {
+			Variable assignedVar = network.getVariable(index);
+			touchConstraintsOf(assignedVar);
+			if (!assignedVar.isAssigned()) {
+				continue;
 			}
-			// update unassigned
-			for (Variable variable: modifiedConstraint.vars) {
-				if (!variable.isAssigned()) {
-					Boolean isVariableModified = false;
-					List<Integer> domainValues = variable.getValues();
-					if (modifiedVariables.containsKey(variable)) {
-						isVariableModified = true;
-					}
-					for (Integer value: assignedValues) {
-						if (domainValues.contains(value)) {
-							// domain contains value that needs to be removed
-							if (!isVariableModified) { // add and not present in modifiedVariablesMap
-								trail.push(variable);
-								isVariableModified = true;
-							}
-
-							variable.removeValueFromDomain(value);
-							if (variable.size()==0) {
-								variable.unassign();
-								return false;
-							} else if (variable.size()==1) {
-								Integer assignedValue = variable.getValues().get(0);
-								variable.assignValue(assignedValue);
-								assignedVariables.put(variable, assignedValue);
-							}
+
+			int value = assignedVar.getAssignment();
+			for (int peer: network.getPeers(assignedVar)) {
+				Variable variable = network.getVariable(peer);
+				if (variable.isAssigned()) {
+					// two assignments in one constraint share a value
+					if (variable.getAssignment() == value) {
+						if (explanations != null) {
+							explanations.conflict(assignedVar, variable);
 						}
+						weighConflict(assignedVar, variable);
+						return false;
+					}
+					continue;
+				}
+				if (!variable.getDomain().contains(value)) {
+					continue;
+				}
+
+				// domain contains value that needs to be removed
+				if (modifiedVariables[peer] != propagationEpoch) {
+					trail.push(variable);
+				}
+				variable.removeValueFromDomain(value);
+				if (explanations != null) {
+					explanations.removed(variable, value, assignedVar);
+				}
+				if (variable.size()==0) {
+					if (explanations != null) {
+						explanations.conflict(variable, null);
 					}
-					if (isVariableModified) {
-						modifiedVariables.put(variable, variable.getDomain());
+					weighConflict(assignedVar, variable);
+					variable.unassign();
+					return false;
+				} else if (variable.size()==1) {
+					int assignedValue = variable.getDomain().first();
+					variable.assignValue(assignedValue);
+					assignedVariables[peer] = propagationEpoch;
+					if (explanations != null) {
+						explanations.forced(variable);
 					}
 				}
+				modifiedVariables[peer] = propagationEpoch;
 			}
 		}
 		return true;
 	}
 
+	// Bumps the weights of the constraints a and b share, which is where
+	// a's value ran into b
+	private void weighConflict(Variable a, Variable b) {
+		if (constraintWeights == null) {
+			return;
+		}
+		int[] shared = network.getConstraintIndices(b);
+		for (int c: network.getConstraintIndices(a)) {
+			for (int d: shared) {
+				if (c == d) {
+					constraintWeights[c]++;
+				}
+			}
+		}
+	}
+
+	private void weighFailure(int c) {
+		if (constraintWeights != null) {
+			constraintWeights[c]++;
+		}
+	}
+
+	// Records the constraints of v as changed during this propagation
+	private void touchConstraintsOf(Variable v) {
+		for (int c: network.getConstraintIndices(v)) {
+			if (touchedStamp[c] != touchedEpoch) {
+				touchedStamp[c] = touchedEpoch;
+				touchedConstraints[touchedCount++] = c;
+			}
+		}
+	}
+
 	/**
 	 * Part 2 TODO: Implement both of Norvig's Heuristics
 	 *
@@ -189,85 +319,88 @@ public class BTSolver
 	 */
 	public Map.Entry<HashMap<Variable,Integer>,Boolean> norvigCheck ( )
 	{
-        HashMap<Variable, Domain> modifiedVariableDomains = new HashMap<Variable, Domain>();
-		HashMap<Variable, Integer> assignedVariables = new HashMap<Variable, Integer>();
+		Boolean isConsistent = runNorvigCheck();
 
-		Boolean isConsistent = norvigCheckPropogation(modifiedVariableDomains, assignedVariables);
+		return Pair.of(markedAssignments(assignedStamp), isConsistent);
+	}
 
-		return Pair.of(assignedVariables, isConsistent);
+	// norvigCheck without building the map, as the search runs it
+	private boolean runNorvigCheck ( )
+	{
+		propagationEpoch++;
+		return norvigCheckPropogation( modifiedStamp, assignedStamp );
 	}
 
-	public Boolean norvigCheckPropogation(Map<Variable, Domain> modifiedVariables, Map<Variable, Integer> assignedVariables) {
+	public Boolean norvigCheckPropogation(int[] modifiedVariables, int[] assignedVariables) {
 
-		// First perform Forward Checking Propogation
-		Boolean isConsistent = forwardCheckPropogation(modifiedVariables, assignedVariables);
-		if (!isConsistent) {
-			return false;
+		if (unitVariables == null) {
+			buildUnits();
 		}
-			
-		Boolean newVariableAssigned = false;
-		List<Constraint> allConstraints = network.getConstraints();
-		for (Constraint constraint: allConstraints) {
-
-			// first tabuate assigned values
-			// generate values count map and value one variable map
-			Set<Integer> assignedDomainValue = new HashSet<>();
-			Map<Integer, Integer> domainValueCountMap = new HashMap<>();
-			Map<Integer, Variable> anyVariableWithDomainValue = new HashMap<>();
 
-			int totalDomainValues = sudokuGrid.getN();
-			for (int i=1; i<=totalDomainValues; i++) {
-				domainValueCountMap.put(i, 0);
+		// Forward checking propagates the singles placed in the previous
+		// round, and its touched constraints are the only ones that can
+		// hold new singles; stop once a round touches nothing.
+		while (true) {
+			if (!forwardCheckPropogation(modifiedVariables, assignedVariables)) {
+				return false;
 			}
-			for (Variable v:constraint.vars) {
-				if (v.isAssigned()) {
-					assignedDomainValue.add(v.getAssignment());
-				} else {
-					for (Integer domainValue: v) {
-						if (domainValueCountMap.get(domainValue)==0) {
-							anyVariableWithDomainValue.put(domainValue, v);
-						}
-						domainValueCountMap.put(domainValue, domainValueCountMap.get(domainValue) + 1);
-					}
+			if (touchedCount == 0) {
+				return true;
+			}
+			for (int t = 0; t < touchedCount; t++) {
+				if (assignHiddenSingles(touchedConstraints[t], modifiedVariables, assignedVariables) < 0) {
+					weighFailure(touchedConstraints[t]);
+					return false;
 				}
 			}
-			
-			// iterate through all domain_values and check if some unassigned value has 0 count map then fail
-			// if some value has 1 count map then pick the variable from other map and assign
-			for (Map.Entry<Integer, Integer> domainCountPair : domainValueCountMap.entrySet()) {
-
-				Integer domainVal = domainCountPair.getKey();
-				Integer domainValCount = domainCountPair.getValue();
-				if (domainValCount == 0 && !assignedDomainValue.contains(domainVal)) {
-					isConsistent = false;
-				} else if (domainValCount == 1) {
-
-					newVariableAssigned = true;
-					Variable assignmentVar = anyVariableWithDomainValue.get(domainVal);
-					if (!modifiedVariables.containsKey(assignmentVar)) {
-						trail.push(assignmentVar);
-					}
-					assignmentVar.assignValue(domainVal); 	// assignment made
-					assignedVariables.put(assignmentVar, domainVal);
-
-					List<Variable> neighbors = network.getNeighborsOfVariable(assignmentVar);
-					for (Variable neighbour:neighbors) {
-						if (!neighbour.isAssigned() && neighbour.getValues().contains(domainVal)) {
-							if (!modifiedVariables.containsKey(neighbour)) {
-								trail.push(neighbour);
-							}
-							neighbour.removeValueFromDomain(domainVal);
-						}
-					}
+		}
+	}
+
+	/**
+	 * Assigns every value that has a single place left in unit c. Returns
+	 * the number of assignments made, or -1 if some value has no place left
+	 * or two values need the same variable.
+	 */
+	private int assignHiddenSingles(int c, int[] modifiedVariables, int[] assignedVariables) {
+		int N = sudokuGrid.getN();
+		int[] unit = unitVariables[c];
+
+		Arrays.fill(valueCount, 0);
+		for (int k = 0; k < unit.length; k++) {
+			Domain d = network.getVariable(unit[k]).getDomain();
+			for (int value = d.first(); value != -1; value = d.next(value)) {
+				if (value > N) {
+					return -1;
 				}
+				valueCount[value]++;
+				valuePlace[value] = k;
 			}
 		}
 
-		// recursive call
-		if (newVariableAssigned) {
-			//isConsistent &= norvigCheckPropogation(modifiedVariables, assignedVariables);
+		int assigned = 0;
+		for (int value = 1; value <= N; value++) {
+			if (valueCount[value] == 0) {
+				return -1;
+			}
+			if (valueCount[value] != 1) {
+				continue;
+			}
+
+			Variable v = network.getVariable(unit[valuePlace[value]]);
+			if (v.isAssigned()) {
+				// already holds it, or was just given another single
+				if (v.getAssignment() != value) {
+					return -1;
+				}
+				continue;
+			}
+
+			push(v, modifiedVariables);
+			v.assignValue(value);
+			assignedVariables[v.index()] = propagationEpoch;
+			assigned++;
 		}
-		return isConsistent;
+		return assigned;
 	}
 
 	/**
@@ -278,7 +411,387 @@ public class BTSolver
 	 */
 	private boolean getTournCC ( )
 	{
-		return forwardChecking().getValue();
+		return runForwardChecking();
+	}
+
+	// =================================================================
+	// Subset Propagation
+	// =================================================================
+
+	/**
+	 * Forward checking plus, over every constraint touched since the last
+	 * pass, until nothing changes:
+	 *
+	 * (1) hidden singles: a value with one place left in a unit goes there
+	 * (2) naked pairs/triples: k variables sharing k values own them
+	 * (3) hidden pairs: two values confined to the same two variables
+	 *     remove everything else from those variables
+	 * (4) pointing and box/line reduction: a value confined to where a unit
+	 *     overlaps another leaves the rest of the other unit
+	 *
+	 * Return: true if the network is still consistent
+	 */
+	private boolean subsetsCheck ( )
+	{
+		if ( overlaps == null )
+			buildOverlaps();
+
+		propagationEpoch++;
+		int[] modifiedVariables = modifiedStamp;
+		int[] assignedVariables = assignedStamp;
+
+		// Every change below requeues its variable, so the loop ends once a
+		// forward checking pass finds nothing new to look at
+		while ( true )
+		{
+			if ( ! forwardCheckPropogation( modifiedVariables, assignedVariables ) )
+				return false;
+
+			if ( touchedCount == 0 )
+				return true;
+
+			for ( int t = 0; t < touchedCount; t++ )
+				if ( ! reduceUnit( touchedConstraints[t], modifiedVariables, assignedVariables ) )
+				{
+					weighFailure( touchedConstraints[t] );
+					return false;
+				}
+		}
+	}
+
+	private boolean reduceUnit ( int c, int[] modifiedVariables, int[] assignedVariables )
+	{
+		// Hidden singles first, their assignments are propagated by the next
+		// pass before anything else
+		int assigned = assignHiddenSingles( c, modifiedVariables, assignedVariables );
+		if ( assigned != 0 )
+			return assigned > 0;
+
+		int N = sudokuGrid.getN();
+		int[] unit = unitVariables[c];
+		int words = positionWords;
+
+		// Where each value can still go, as a bitmask over the unit
+		Arrays.fill( positions, 0, ( N + 1 ) * words, 0L );
+		for ( int k = 0; k < unit.length; ++k )
+		{
+			Domain d = network.getVariable( unit[k] ).getDomain();
+			for ( int value = d.first(); value != -1; value = d.next( value ) )
+			{
+				if ( value > N )
+					return false;
+
+				positions[ value * words + ( k >>> 6 ) ] |= 1L << k;
+			}
+		}
+
+		return nakedSubsets( unit, 2, modifiedVariables )
+		    && nakedSubsets( unit, 3, modifiedVariables )
+		    && hiddenPairs( unit, modifiedVariables )
+		    && pointing( c, modifiedVariables );
+	}
+
+	// k unassigned variables whose domains together hold only k values
+	// take those values away from the rest of the unit
+	private boolean nakedSubsets ( int[] unit, int k, int[] modifiedVariables )
+	{
+		int numCandidates = 0;
+		for ( int index : unit )
+		{
+			Variable v = network.getVariable( index );
+			if ( ! v.isAssigned() && v.size() <= k )
+				subsetCandidates[ numCandidates++ ] = index;
+		}
+
+		if ( numCandidates < k )
+			return true;
+
+		int[] pick = subsetPick;
+		for ( int i = 0; i < k; ++i )
+			pick[i] = i;
+
+		while ( true )
+		{
+			Arrays.fill( subsetMask, 0L );
+			for ( int i = 0; i < k; ++i )
+			{
+				Domain d = network.getVariable( subsetCandidates[ pick[i] ] ).getDomain();
+				for ( int w = 0; w < subsetMask.length; ++w )
+					subsetMask[w] |= d.word( w );
+			}
+
+			int union = 0;
+			for ( long word : subsetMask )
+				union += Long.bitCount( word );
+
+			// k variables cannot share fewer than k values
+			if ( union < k )
+				return false;
+
+			if ( union == k )
+			{
+				for ( int index : unit )
+				{
+					if ( isPicked( index, pick, k ) )
+						continue;
+
+					for ( int w = 0; w < subsetMask.length; ++w )
+						for ( long bits = subsetMask[w]; bits != 0; bits &= bits - 1 )
+							if ( ! removeValue( network.getVariable( index ), ( w << 6 ) + Long.numberOfTrailingZeros( bits ), modifiedVariables ) )
+								return false;
+				}
+			}
+
+			// Next combination of k candidates in lexicographic order
+			int i = k - 1;
+			while ( i >= 0 && pick[i] == numCandidates - k + i )
+				i--;
+
+			if ( i < 0 )
+				return true;
+
+			pick[i]++;
+			for ( int j = i + 1; j < k; ++j )
+				pick[j] = pick[j-1] + 1;
+		}
+	}
+
+	private boolean isPicked ( int index, int[] pick, int k )
+	{
+		for ( int i = 0; i < k; ++i )
+			if ( subsetCandidates[ pick[i] ] == index )
+				return true;
+
+		return false;
+	}
+
+	// Two values that can only go in the same two variables leave those
+	// variables with just the two of them
+	private boolean hiddenPairs ( int[] unit, int[] modifiedVariables )
+	{
+		int N = sudokuGrid.getN();
+		for ( int a = 1; a <= N; ++a )
+		{
+			if ( positionCount( a ) != 2 )
+				continue;
+
+			for ( int b = a + 1; b <= N; ++b )
+			{
+				if ( positionCount( b ) != 2 || ! samePositions( a, b ) )
+					continue;
+
+				for ( int k = firstPosition( a ); k != -1; k = nextPosition( a, k ) )
+				{
+					Variable v = network.getVariable( unit[k] );
+					if ( v.isAssigned() || v.size() == 2 )
+						continue;
+
+					for ( int value = v.getDomain().first(); value != -1; value = v.getDomain().next( value ) )
+						if ( value != a && value != b && ! removeValue( v, value, modifiedVariables ) )
+							return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// A value whose places in unit c all lie in its overlap with another
+	// unit must be placed there, so it leaves the rest of the other unit
+	private boolean pointing ( int c, int[] modifiedVariables )
+	{
+		int N = sudokuGrid.getN();
+		for ( Overlap overlap : overlaps[c] )
+		{
+			for ( int value = 1; value <= N; ++value )
+			{
+				boolean inside = false, outside = false;
+				for ( int w = 0; w < positionWords; ++w )
+				{
+					long bits = positions[ value * positionWords + w ];
+					inside  |= ( bits & overlap.inside[w] ) != 0;
+					outside |= ( bits & ~overlap.inside[w] ) != 0;
+				}
+
+				if ( ! inside || outside )
+					continue;
+
+				for ( int index : overlap.outside )
+					if ( ! removeValue( network.getVariable( index ), value, modifiedVariables ) )
+						return false;
+			}
+		}
+		return true;
+	}
+
+	// Removes value from an unassigned variable, assigning it if one value
+	// is left. Returns false if the domain is wiped out.
+	private boolean removeValue ( Variable v, int value, int[] modifiedVariables )
+	{
+		if ( v.isAssigned() || ! v.getDomain().contains( value ) )
+			return true;
+
+		push( v, modifiedVariables );
+		v.removeValueFromDomain( value );
+		if ( v.size() == 0 )
+			return false;
+
+		if ( v.size() == 1 )
+			v.assignValue( v.getDomain().first() );
+
+		return true;
+	}
+
+	// Saves v on the trail the first time it changes in this propagation
+	private void push ( Variable v, int[] modifiedVariables )
+	{
+		if ( modifiedVariables[ v.index() ] != propagationEpoch )
+		{
+			trail.push( v );
+			modifiedVariables[ v.index() ] = propagationEpoch;
+		}
+	}
+
+	// The variables stamped by the last propagation, with their domains
+	private HashMap<Variable, Domain> markedDomains ( int[] stamp )
+	{
+		HashMap<Variable, Domain> marked = new HashMap<Variable, Domain>();
+		for ( Variable v : network.getVariables() )
+			if ( stamp[ v.index() ] == propagationEpoch )
+				marked.put( v, v.getDomain() );
+
+		return marked;
+	}
+
+	// The variables stamped by the last propagation, with their assignments
+	private HashMap<Variable, Integer> markedAssignments ( int[] stamp )
+	{
+		HashMap<Variable, Integer> marked = new HashMap<Variable, Integer>();
+		for ( Variable v : network.getVariables() )
+			if ( stamp[ v.index() ] == propagationEpoch )
+				marked.put( v, v.getAssignment() );
+
+		return marked;
+	}
+
+	private int positionCount ( int value )
+	{
+		int count = 0;
+		for ( int w = 0; w < positionWords; ++w )
+			count += Long.bitCount( positions[ value * positionWords + w ] );
+
+		return count;
+	}
+
+	private int firstPosition ( int value )
+	{
+		return nextPosition( value, -1 );
+	}
+
+	private int nextPosition ( int value, int k )
+	{
+		for ( int from = k + 1, w = from >>> 6; w < positionWords; ++w, from = w << 6 )
+		{
+			long bits = positions[ value * positionWords + w ] & ( -1L << from );
+			if ( bits != 0 )
+				return ( w << 6 ) + Long.numberOfTrailingZeros( bits );
+		}
+		return -1;
+	}
+
+	private boolean samePositions ( int a, int b )
+	{
+		for ( int w = 0; w < positionWords; ++w )
+			if ( positions[ a * positionWords + w ] != positions[ b * positionWords + w ] )
+				return false;
+
+		return true;
+	}
+
+	// Variable indices of every unit, and value counters sized for them
+	private void buildUnits ( )
+	{
+		int numConstraints = network.getConstraints().size();
+		int N = sudokuGrid.getN();
+
+		unitVariables = new int[ numConstraints ][];
+		for ( int c = 0; c < numConstraints; ++c )
+		{
+			List<Variable> vars = network.getConstraint( c ).vars;
+			unitVariables[c] = new int[ vars.size() ];
+			for ( int k = 0; k < vars.size(); ++k )
+				unitVariables[c][k] = vars.get( k ).index();
+		}
+
+		valueCount = new int[ N + 1 ];
+		valuePlace = new int[ N + 1 ];
+	}
+
+	// For each unit, the units it overlaps in more than one variable, e.g.
+	// a block and the rows crossing it
+	private void buildOverlaps ( )
+	{
+		if ( unitVariables == null )
+			buildUnits();
+
+		int numConstraints = network.getConstraints().size();
+		int N = sudokuGrid.getN();
+
+		int maxUnit = 0;
+		for ( int[] unit : unitVariables )
+			maxUnit = Math.max( maxUnit, unit.length );
+
+		positionWords    = ( Math.max( 1, maxUnit ) + 63 ) >>> 6;
+		positions        = new long[ ( N + 1 ) * positionWords ];
+		subsetCandidates = new int[ maxUnit ];
+		subsetPick       = new int[3];
+		subsetMask       = new long[ ( N >>> 6 ) + 1 ];
+
+		int[] shared = new int[ numConstraints ];
+		overlaps = new Overlap[ numConstraints ][];
+		for ( int c = 0; c < numConstraints; ++c )
+		{
+			Arrays.fill( shared, 0 );
+			for ( int index : unitVariables[c] )
+				for ( int other : network.getConstraintIndices( network.getVariable( index ) ) )
+					if ( other != c )
+						shared[ other ]++;
+
+			Set<Integer> members = new HashSet<Integer>();
+			for ( int index : unitVariables[c] )
+				members.add( index );
+
+			List<Overlap> list = new ArrayList<Overlap>();
+			for ( int other = 0; other < numConstraints; ++other )
+			{
+				if ( shared[ other ] < 2 )
+					continue;
+
+				Overlap overlap = new Overlap();
+				overlap.inside = new long[ positionWords ];
+				overlap.outside = new int[ unitVariables[ other ].length - shared[ other ] ];
+
+				for ( int k = 0; k < unitVariables[c].length; ++k )
+					if ( contains( unitVariables[ other ], unitVariables[c][k] ) )
+						overlap.inside[ k >>> 6 ] |= 1L << k;
+
+				int n = 0;
+				for ( int index : unitVariables[ other ] )
+					if ( ! members.contains( index ) )
+						overlap.outside[ n++ ] = index;
+
+				list.add( overlap );
+			}
+			overlaps[c] = list.toArray( new Overlap[ list.size() ] );
+		}
+	}
+
+	private static boolean contains ( int[] array, int value )
+	{
+		for ( int a : array )
+			if ( a == value )
+				return true;
+
+		return false;
 	}
 
 	// =================================================================
@@ -303,18 +816,9 @@ public class BTSolver
 	 */
 	public Variable getMRV ( )
 	{
-        int minimumDomainSize = sudokuGrid.getN()+1; // Domain size will always be greater than this value
-		Variable minDomainVariable = null;			//  Returns null if all variables have been assigned
-		// iterate through all variables, for unassigned variables, calculate variable with minimum degree
-		for (Variable v: network.getVariables() ) {
-			if (!v.isAssigned()) {
-				if (v.size() < minimumDomainSize) {
-					minimumDomainSize = v.size();
-					minDomainVariable = v;
-				}
-			}
-		}
-		return minDomainVariable;
+		// The network keeps unassigned variables bucketed by domain size
+		int index = network.getDomainBuckets( false ).selectMinimumSize();
+		return index == -1 ? null : network.getVariable( index );
 	}
 
 	/**
@@ -328,71 +832,93 @@ public class BTSolver
 	 */
 	public List<Variable> MRVwithTieBreaker ( )
 	{
-        Integer minimumDomainSize = sudokuGrid.getN() + 1;
-		Integer maxDegree = 0;
+		DomainBuckets buckets = network.getDomainBuckets( true );
 		List<Variable> minDomainMaxDegreeVariables = new ArrayList<>();
-		
-		for (Variable v: network.getVariables()) {
-			if (!v.isAssigned()) {
-				if (v.size()<minimumDomainSize) {
-					maxDegree=0;
-					minimumDomainSize = v.size();
-				} 
-				if (v.size()==minimumDomainSize) {
-					List<Variable> neighbours = network.getNeighborsOfVariable(v);
-					Integer degree = 0;
-					for (Variable neighbour: neighbours) {
-						if (!neighbour.isAssigned()) {
-							degree++;
-						}
-					}
-					if (degree>maxDegree) {
-						minDomainMaxDegreeVariables.clear();
-						maxDegree = degree;
-					}
-					if (degree==maxDegree) {
-						minDomainMaxDegreeVariables.add(v);
-					}
-				}
 
-			}
+		int minimumDomainSize = buckets.minimumSize();
+		if (minimumDomainSize == -1) {
+			minDomainMaxDegreeVariables.add(null);
+			return minDomainMaxDegreeVariables;
 		}
 
-		if (minDomainMaxDegreeVariables.isEmpty()){
-			minDomainMaxDegreeVariables.add(null);
+		// the buckets split by degree too, so the answer is one cell,
+		// already in variable order
+		int maxDegree = buckets.maximumDegree(minimumDomainSize);
+		for (int index = buckets.next(minimumDomainSize, maxDegree, -1); index != -1;
+				index = buckets.next(minimumDomainSize, maxDegree, index)) {
+			minDomainMaxDegreeVariables.add(network.getVariable(index));
 		}
         return minDomainMaxDegreeVariables;
     }
 
+	// First variable MRVwithTieBreaker would return, without the list
+	private Variable getMRVwithTieBreaker ( )
+	{
+		int index = network.getDomainBuckets( true ).selectMinimumSizeMaxDegree( random );
+		return index == -1 ? null : network.getVariable( index );
+	}
+
 	/**
-	 * Optional TODO: Implement your own advanced Variable Heuristic
-	 *
-	 * Completing the three tourn heuristic will automatically enter
-	 * your program into a tournament.
+	 * dom/wdeg: the unassigned variable with the smallest ratio of domain
+	 * size to weighted degree, lowest index on ties or a random one with
+	 * restarts. The weighted degree
+	 * sums the weights of the variable's constraints that still hold
+	 * another unassigned variable, and every constraint starts at weight 1,
+	 * so until propagation fails this is MRV with a degree tie breaker.
+	 * Ratios are compared by cross multiplication instead of dividing.
 	 */
 	private Variable getTournVar ( )
 	{
-		return MRVwithTieBreaker().get(0);
+		if ( constraintWeights == null )
+		{
+			constraintWeights = new int[ network.getConstraints().size() ];
+			Arrays.fill( constraintWeights, 1 );
+		}
+
+		Variable best = null;
+		long bestSize = 0;
+		long bestDegree = 0;
+		int ties = 0;
+		for ( Variable v : network.getVariables() )
+		{
+			if ( v.isAssigned() )
+				continue;
+
+			long size = v.size();
+			long degree = weightedDegree( v );
+			if ( best == null || size * bestDegree < bestSize * degree )
+			{
+				best = v;
+				bestSize = size;
+				bestDegree = degree;
+				ties = 1;
+			}
+			else if ( random != null && size * bestDegree == bestSize * degree && random.nextInt( ++ties ) == 0 )
+			{
+				best = v;
+			}
+		}
+		return best;
+	}
+
+	private long weightedDegree ( Variable v )
+	{
+		long degree = 0;
+		for ( int c : network.getConstraintIndices( v ) )
+			if ( network.getUnassignedCount( c ) > 1 )
+				degree += constraintWeights[c];
+
+		return degree;
 	}
 
 	// =================================================================
 	// Value Selectors
 	// =================================================================
 
-	// Default Value Ordering
+	// Default Value Ordering, the domain already iterates in ascending order
 	public List<Integer> getValuesInOrder ( Variable v )
 	{
-		List<Integer> values = v.getDomain().getValues();
-
-		Comparator<Integer> valueComparator = new Comparator<Integer>(){
-
-			@Override
-			public int compare(Integer i1, Integer i2) {
-				return i1.compareTo(i2);
-			}
-		};
-		Collections.sort(values, valueComparator);
-		return values;
+		return v.getDomain().getValues();
 	}
 
 	/**
@@ -409,39 +935,71 @@ public class BTSolver
         if (v.isAssigned()) {
 			return null;
 		}
+		int[] values = new int[ maxDomainSize() ];
+		return toList( values, valuesLCVOrder( v, values ) );
+	}
 
-		List<Variable> neighbors = network.getNeighborsOfVariable(v);
-		Map<Integer, Integer> domainFrequencyCountMap = new HashMap<Integer, Integer>();
-		//put keys in hash table
-		for (Integer domainVal: v) {
-			domainFrequencyCountMap.put(domainVal, 0);
+	/**
+	 * Writes v's values into out in LCV order and returns how many there
+	 * are. A value's count is the number of peers whose domain holds it,
+	 * found by intersecting each peer's bitmask with v's; ties go to the
+	 * smaller value, or to a random one with restarts. Nothing is allocated.
+	 */
+	private int valuesLCVOrder ( Variable v, int[] out )
+	{
+		Domain domain = v.getDomain();
+		int n = 0;
+		for ( int value = domain.first(); value != -1; value = domain.next( value ) )
+		{
+			out[ n++ ] = value;
+			valueConflicts[ value ] = 0;
 		}
-		//iterate through all neighbouring domain
-		for (Variable neighbor: neighbors) {
-			for (Integer neighborDomainVal: neighbor) {
-				if (domainFrequencyCountMap.containsKey(neighborDomainVal)) {
-					domainFrequencyCountMap.replace(neighborDomainVal, domainFrequencyCountMap.get(neighborDomainVal)+1);
-				}
-			}
+
+		int words = domain.wordCount();
+		for ( int peer : network.getPeers( v ) )
+		{
+			Domain peerDomain = network.getVariable( peer ).getDomain();
+			for ( int w = 0; w < words; ++w )
+				for ( long shared = domain.word( w ) & peerDomain.word( w ); shared != 0; shared &= shared - 1 )
+					valueConflicts[ ( w << 6 ) + Long.numberOfTrailingZeros( shared ) ]++;
 		}
 
-		// generate sorted domain key val pairs from Map
-		List<Map.Entry<Integer, Integer> > domainFrequencyCountList = new LinkedList<Map.Entry<Integer, Integer> >(domainFrequencyCountMap.entrySet());
-		Collections.sort(domainFrequencyCountList, new Comparator<Map.Entry<Integer, Integer> > () {
-			public int compare (Map.Entry<Integer, Integer> e1, Map.Entry<Integer, Integer> e2) {
-				if (e1.getValue()==e2.getValue()) {
-					return e1.getKey().compareTo(e2.getKey());
-				}
-				return e1.getValue().compareTo(e2.getValue());
-			}
-		});
+		// Shuffled first, the stable sort below then leaves ties in random order
+		boolean byValue = random == null;
+		for ( int i = n - 1; ! byValue && i > 0; --i )
+		{
+			int j = random.nextInt( i + 1 );
+			int value = out[i];
+			out[i] = out[j];
+			out[j] = value;
+		}
 
-		// extract keys into a new list from sorted keyValue pairs
-		List<Integer> result = new ArrayList<Integer>();
-		for (Map.Entry<Integer, Integer> keyValPair: domainFrequencyCountList) {
-			result.add(keyValPair.getKey());
+		// Insertion sort on ( conflicts, value ), the domain is small
+		for ( int i = 1; i < n; ++i )
+		{
+			int value = out[i];
+			int conflicts = valueConflicts[ value ];
+			int j = i - 1;
+			while ( j >= 0 && ( valueConflicts[ out[j] ] > conflicts
+			                 || ( byValue && valueConflicts[ out[j] ] == conflicts && out[j] > value ) ) )
+			{
+				out[ j + 1 ] = out[j];
+				j--;
+			}
+			out[ j + 1 ] = value;
 		}
-		return result;
+		return n;
+	}
+
+	// Writes v's values into out in ascending order, returns how many
+	private int valuesInOrder ( Variable v, int[] out )
+	{
+		Domain domain = v.getDomain();
+		int n = 0;
+		for ( int value = domain.first(); value != -1; value = domain.next( value ) )
+			out[ n++ ] = value;
+
+		return n;
 	}
 
 	/**
@@ -459,79 +1017,451 @@ public class BTSolver
 	// Engine Functions
 	//==================================================================
 
-	public int solve (float time_left)
+	public SolveStatus solve ( SolveLimits limits )
 	{
-		if(time_left <= 60.0) {
-			return -1;
+		if ( hasSolution )
+			return SolveStatus.SOLVED;
+
+		return timedSearch( limits, 1, restarts != null );
+	}
+
+	/**
+	 * Propagates the givens before the first decision. Returns false if
+	 * they conflict, and solve() and countSolutions() then report
+	 * UNSATISFIABLE without searching.
+	 */
+	public boolean propagateGivens ( )
+	{
+		givensFailed = ! checkConsistency() || ! network.isConsistent();
+		return ! givensFailed;
+	}
+
+	/**
+	 * Assigns value to the variable at index and propagates, as a decision
+	 * taken before solve(), e.g. the branch into a subtree of another
+	 * solver's search. The decision is never undone by the search. Returns
+	 * false if propagation ran into a conflict.
+	 */
+	public boolean decide ( int index, int value )
+	{
+		Variable v = network.getVariable( index );
+		trail.placeTrailMarker();
+		trail.push( v );
+		v.assignValue( value );
+		if ( explanations != null )
+			explanations.decided( v, 0 );
+
+		return propagate();
+	}
+
+	/**
+	 * Packs the domains of every variable, in variable order, followed by
+	 * a bitset of the assigned ones, e.g. to start a solver for a subtree
+	 * from this one's state with restoreDomains().
+	 */
+	public long[] saveDomains ( )
+	{
+		List<Variable> variables = network.getVariables();
+		int words = ( variables.size() + 63 ) >>> 6;
+		for ( Variable v : variables )
+			words += v.getDomain().wordCount();
+
+		long[] saved = new long[ words ];
+		int offset = 0;
+		for ( Variable v : variables )
+			offset += v.getDomain().saveTo( saved, offset );
+
+		for ( Variable v : variables )
+			if ( v.isAssigned() )
+				saved[ offset + ( v.index() >>> 6 ) ] |= 1L << v.index();
+
+		return saved;
+	}
+
+	/**
+	 * Sets every variable to the state saved by saveDomains() on a solver
+	 * for the same board, before solve(). The state is taken as already
+	 * propagated, like decisions made with decide().
+	 */
+	public void restoreDomains ( long[] saved )
+	{
+		List<Variable> variables = network.getVariables();
+		int offset = 0;
+		for ( Variable v : variables )
+		{
+			v.restoreDomain( saved, offset );
+			offset += v.getDomain().wordCount();
 		}
+
+		for ( Variable v : variables )
+			if ( ( saved[ offset + ( v.index() >>> 6 ) ] & ( 1L << v.index() ) ) != 0 && ! v.isAssigned() )
+				v.assignValue( v.getDomain().first() );
+
+		network.clearModified();
+	}
+
+	/**
+	 * Enumerates solutions until limit of them have been found or the search
+	 * space is exhausted, e.g. limit 2 checks that a puzzle is unique. The
+	 * same propagators, heuristics and trail are used as for solve().
+	 *
+	 * Returns SOLVED if at least one solution was found and the search ran
+	 * to the end or up to the limit, UNSATISFIABLE if it found none, or the
+	 * limit that stopped it. getSolutionCount() then tells how many were
+	 * found and getSolution() returns the first one.
+	 */
+	public SolveStatus countSolutions ( int limit, SolveLimits limits )
+	{
+		return timedSearch( limits, limit, false );
+	}
+
+	// Restarts only make sense for solve(): a restarted count would find
+	// the same solutions again
+	private SolveStatus timedSearch ( SolveLimits limits, int solutionLimit, boolean restart )
+	{
 		long startTime = System.nanoTime();
-		if ( hasSolution )
-			return 0;
+		long removedBefore = network.getValuesRemoved();
+		long startNodes = statistics.getNodes();
+
+		// Runs capped by the restart schedule until one of them finishes
+		SolveStatus status = null;
+		if ( restart )
+		{
+			for ( int run = 0; status == null; ++run )
+			{
+				if ( run > 0 && ! restarts.keepsWeights() )
+					constraintWeights = null;
+
+				status = search( limits, solutionLimit, startNodes, restarts.cutoff( run ) );
+			}
+		}
+		else
+		{
+			status = search( limits, solutionLimit, startNodes, Long.MAX_VALUE );
+		}
+		statistics.addSolveTime(System.nanoTime() - startTime);
+
+		if ( listener != null )
+			listener.solveFinished( status, network.getValuesRemoved() - removedBefore );
+
+		return status;
+	}
+
+	/**
+	 * Depth first search driven by an explicit stack of choice points, one
+	 * per decision level, instead of Java recursion. Each choice point keeps
+	 * its variable, the ordered values to try and the next one to try; the
+	 * trail marker placed before every attempt is what undoes it, so the
+	 * depth of the search costs no Java stack at all.
+	 *
+	 * With conflictBackjumping, and only one solution wanted, each choice
+	 * point also collects the decision levels to blame for its failed
+	 * values. Once all of them failed the search jumps straight back to
+	 * the deepest of those levels and learns the nogood they form.
+	 *
+	 * startNodes is where the node budget started counting. Once the trail
+	 * has undone undoLimit markers the search undoes everything it did and
+	 * returns null, so the caller can restart it.
+	 */
+	private SolveStatus search ( SolveLimits limits, int solutionLimit, long startNodes, long undoLimit )
+	{
+		solutionCount = 0;
+		firstSolution = null;
+		if ( givensFailed )
+			return SolveStatus.UNSATISFIABLE;
+
+		boolean backjumping = explanations != null && solutionLimit == 1;
 
 		// Variable Selection
+		long selectStart = listener != null ? System.nanoTime() : 0;
 		Variable v = selectNextVariable();
-
 		if ( v == null )
 		{
-			for ( Variable var : network.getVariables() )
-			{
-				// If all variables haven't been assigned
-				if ( ! var.isAssigned() )
-				{
-					return 0;
-				}
-			}
+			if ( ! allAssigned() || ! network.isConsistent() )
+				return SolveStatus.UNSATISFIABLE;
 
-			// Success
-			hasSolution = true;
-			return 0;
+			recordSolution();
+			return SolveStatus.SOLVED;
 		}
 
-		// Attempt to assign a value
-		for ( Integer i : getNextValues( v ) )
+		int depth = 0;
+		openChoicePoint( depth, v );
+		if ( listener != null )
+			listener.selected( System.nanoTime() - selectStart );
+
+		int startUndos = trail.getUndoCount();
+		long steps = 0;
+		while ( depth >= 0 )
 		{
+			SolveStatus stop = limits.check( statistics.getNodes() - startNodes, ++steps );
+			if ( stop != null )
+				return stop;
+
+			if ( trail.getUndoCount() - startUndos >= undoLimit )
+			{
+				// Give up on this run, the attempts above depth are still live
+				for ( int d = depth - 1; d >= 0; --d )
+					trail.undo();
+
+				network.clearModified();
+				return null;
+			}
+
+			ChoicePoint cp = choicePoints[depth];
+			if ( cp.next == cp.size )
+			{
+				// Every value failed, undo the attempt one level up
+				if ( backjumping )
+					depth = backjump( depth );
+				else if ( --depth >= 0 )
+					backtrack( depth );
+				continue;
+			}
+
 			// Store place in trail and push variable's state on trail
 			trail.placeTrailMarker();
-			trail.push( v );
+			trail.push( cp.variable );
 
 			// Assign the value
-			v.assignValue( i );
-
-			// Propagate constraints, check consistency, recurse
-			if ( checkConsistency() ) {
-				long endTime = System.nanoTime();
-                long elapsedTime = (endTime - startTime);
-                float elapsedSecs = ((float)(endTime - startTime)) / 1000000000;
-                float new_start_time = time_left - elapsedSecs;
-				int check_status = solve(new_start_time);
-				if(check_status == -1) {
-				    return -1;
+			cp.variable.assignValue( cp.values[ cp.next++ ] );
+			statistics.addNode();
+			if ( listener != null )
+				listener.nodeExpanded( depth );
+
+			// A learned nogood rules the value out before any propagation
+			if ( backjumping )
+			{
+				explanations.decided( cp.variable, depth + 1 );
+				if ( violatesNogood( cp, depth ) )
+				{
+					backtrack( depth );
+					continue;
 				}
 			}
 
-			// If this assignment succeeded, return
-			if ( hasSolution )
-				return 0;
+			// Propagate constraints, check consistency, descend
+			if ( propagate() )
+			{
+				long start = listener != null ? System.nanoTime() : 0;
+				Variable next = selectNextVariable();
+				if ( next != null )
+				{
+					openChoicePoint( ++depth, next );
+					if ( listener != null )
+						listener.selected( System.nanoTime() - start );
+					continue;
+				}
+
+				// Success, keep searching if more solutions are wanted. A
+				// check that does not prune may assign every variable with
+				// constraints broken, which is no solution
+				if ( allAssigned() && network.isConsistent() )
+				{
+					recordSolution();
+					if ( solutionCount >= solutionLimit )
+						return SolveStatus.SOLVED;
+				}
+				else if ( backjumping )
+				{
+					// Nothing explains this failure, blame every decision
+					blameAllLevels( cp, depth );
+				}
+			}
+			else if ( backjumping )
+			{
+				explanations.explainConflict( cp.conflicts );
+				clearLevel( cp.conflicts, depth + 1 );
+			}
 
 			// Otherwise backtrack
+			backtrack( depth );
+		}
+		return solutionCount > 0 ? SolveStatus.SOLVED : SolveStatus.UNSATISFIABLE;
+	}
+
+	private void recordSolution ( )
+	{
+		if ( solutionCount++ == 0 )
+			firstSolution = network.toSudokuBoard( sudokuGrid.getP(), sudokuGrid.getQ() );
+
+		hasSolution = true;
+	}
+
+	private void openChoicePoint ( int depth, Variable v )
+	{
+		if ( choicePoints[depth] == null )
+		{
+			choicePoints[depth] = new ChoicePoint();
+			choicePoints[depth].values = new int[ maxDomainSize() ];
+		}
+
+		ChoicePoint cp = choicePoints[depth];
+		cp.variable = v;
+		cp.size     = orderValues( v, cp.values );
+		cp.next     = 0;
+
+		if ( explanations != null )
+		{
+			if ( cp.conflicts == null )
+				cp.conflicts = new long[ Explanations.wordsFor( choicePoints.length ) ];
+			else
+				Arrays.fill( cp.conflicts, 0 );
+
+			// The decisions that pruned v are to blame for its missing values
+			explanations.explainRemovals( v, cp.conflicts );
+		}
+	}
+
+	// Undoes the assignment made at depth
+	private void backtrack ( int depth )
+	{
+		trail.undo();
+		network.clearModified();
+		statistics.addBacktrack();
+		if ( listener != null )
+			listener.backtracked( depth );
+	}
+
+	/**
+	 * Leaves the exhausted choice point at depth for the deepest decision
+	 * in its conflict set, whose own conflict set inherits the rest, and
+	 * learns the nogood made of those decisions. Returns the depth to go
+	 * on at, or -1 if no decision is to blame and there is no solution.
+	 */
+	private int backjump ( int depth )
+	{
+		long[] conflicts = choicePoints[depth].conflicts;
+		int level = highestLevel( conflicts );
+		if ( level == 0 )
+		{
+			for ( int d = depth - 1; d >= 0; --d )
+				trail.undo();
+
+			network.clearModified();
+			return -1;
+		}
+
+		int target = level - 1;
+		learnNogood( conflicts, level );
+		for ( int d = depth - 1; d > target; --d )
 			trail.undo();
+
+		backtrack( target );
+
+		long[] inherited = choicePoints[ target ].conflicts;
+		for ( int w = 0; w < conflicts.length; ++w )
+			inherited[w] |= conflicts[w];
+
+		clearLevel( inherited, level );
+		return target;
+	}
+
+	// Stores the assignments of the decisions in conflicts as a nogood,
+	// watched by the one at level, if it is short enough to keep
+	private void learnNogood ( long[] conflicts, int level )
+	{
+		int length = 0;
+		for ( long word : conflicts )
+			length += Long.bitCount( word );
+
+		if ( length > nogoods.getMaxLength() )
+			return;
+
+		int watchAt = 0;
+		length = 0;
+		for ( int w = 0; w < conflicts.length; ++w )
+		{
+			for ( long bits = conflicts[w]; bits != 0; bits &= bits - 1 )
+			{
+				int l = ( w << 6 ) + Long.numberOfTrailingZeros( bits );
+				Variable decided = choicePoints[ l - 1 ].variable;
+				if ( l == level )
+					watchAt = length;
+
+				nogoodVariables[ length ] = decided.index();
+				nogoodValues[ length++ ]  = decided.getAssignment();
+			}
 		}
+		nogoods.add( nogoodVariables, nogoodValues, length, watchAt );
+	}
+
+	// True if the value just tried at depth completes a learned nogood, in
+	// which case the decisions behind the nogood join the conflict set
+	private boolean violatesNogood ( ChoicePoint cp, int depth )
+	{
+		int slot = nogoods.findViolated( cp.variable.index(), cp.variable.getAssignment(), network );
+		if ( slot == -1 )
+			return false;
+
+		for ( int i = 0; i < nogoods.length( slot ); ++i )
+			explanations.explain( network.getVariable( nogoods.variable( slot, i ) ), cp.conflicts );
+
+		clearLevel( cp.conflicts, depth + 1 );
+		return true;
+	}
+
+	// Makes every decision above depth part of the conflict set of depth
+	private void blameAllLevels ( ChoicePoint cp, int depth )
+	{
+		for ( int l = 1; l <= depth; ++l )
+			cp.conflicts[ l >>> 6 ] |= 1L << l;
+	}
+
+	private static void clearLevel ( long[] levels, int level )
+	{
+		levels[ level >>> 6 ] &= ~( 1L << level );
+	}
+
+	// Highest level in the set, or 0 if it is empty
+	private static int highestLevel ( long[] levels )
+	{
+		for ( int w = levels.length - 1; w >= 0; --w )
+			if ( levels[w] != 0 )
+				return ( w << 6 ) + 63 - Long.numberOfLeadingZeros( levels[w] );
+
 		return 0;
 	}
 
+	// checkConsistency, timed for the listener if there is one
+	private boolean propagate ( )
+	{
+		if ( listener == null )
+			return checkConsistency();
+
+		long start = System.nanoTime();
+		boolean consistent = checkConsistency();
+		listener.propagated( System.nanoTime() - start, consistent );
+		return consistent;
+	}
+
+	private boolean allAssigned ( )
+	{
+		for ( Variable var : network.getVariables() )
+			if ( ! var.isAssigned() )
+				return false;
+
+		return true;
+	}
+
 	public boolean checkConsistency ( )
 	{
 		switch ( cChecks )
 		{
 			case "forwardChecking":
-				return forwardChecking().getValue();
+				return runForwardChecking();
 
 			case "norvigCheck":
-				return norvigCheck().getValue();
+				return runNorvigCheck();
 
 			case "tournCC":
 				return getTournCC();
 
+			case "subsetsCheck":
+				return subsetsCheck();
+
+			case "conflictBackjumping":
+				return runForwardChecking();
+
 			default:
 				return assignmentsCheck();
 		}
@@ -545,7 +1475,7 @@ public class BTSolver
 				return getMRV();
 
 			case "MRVwithTieBreaker":
-				return MRVwithTieBreaker().get(0);
+				return getMRVwithTieBreaker();
 
 			case "tournVar":
 				return getTournVar();
@@ -570,6 +1500,35 @@ public class BTSolver
 		}
 	}
 
+	// The order of getNextValues, written into out without allocating
+	private int orderValues ( Variable v, int[] out )
+	{
+		switch ( valHeuristics )
+		{
+			case "LeastConstrainingValue":
+			case "tournVal":
+				return valuesLCVOrder( v, out );
+
+			default:
+				return valuesInOrder( v, out );
+		}
+	}
+
+	// Largest value any domain can hold, which sizes the value buffers
+	private int maxDomainSize ( )
+	{
+		return sudokuGrid.getN() + 1;
+	}
+
+	private static List<Integer> toList ( int[] values, int count )
+	{
+		List<Integer> list = new ArrayList<Integer>( count );
+		for ( int i = 0; i < count; ++i )
+			list.add( values[i] );
+
+		return list;
+	}
+
 	public boolean hasSolution ( )
 	{
 		return hasSolution;
@@ -577,11 +1536,67 @@ public class BTSolver
 
 	public SudokuBoard getSolution ( )
 	{
+		if ( firstSolution != null )
+			return firstSolution;
+
 		return network.toSudokuBoard ( sudokuGrid.getP(), sudokuGrid.getQ() );
 	}
 
+	// Number of solutions found by the last solve or countSolutions
+	public int getSolutionCount ( )
+	{
+		return solutionCount;
+	}
+
+	// Returns a snapshot of this solver's statistics
+	public SolverStatistics getStatistics ( )
+	{
+		SolverStatistics snapshot = new SolverStatistics( statistics );
+		snapshot.addTrailPushes( trail.getPushCount() - trailPushBaseline );
+		return snapshot;
+	}
+
+	// Attaches a listener for search events, or detaches it with null
+	public void setSearchListener ( SearchListener listener )
+	{
+		this.listener = listener;
+	}
+
+	// Restarts solve() on the given schedule, breaking ties at random, or
+	// searches once with fixed tie breaking again when policy is null
+	public void setRestarts ( RestartPolicy policy )
+	{
+		this.restarts = policy;
+		this.random   = policy != null ? new SplittableRandom( policy.getSeed() ) : null;
+	}
+
 	public ConstraintNetwork getNetwork ( )
 	{
 		return network;
 	}
+
+	// =================================================================
+	// Search Stack
+	// =================================================================
+
+	// A decision variable with its ordered values and the next one to try.
+	// The value buffer is allocated once per depth and reused.
+	private static final class ChoicePoint
+	{
+		Variable variable;
+		int[] values;
+		int size;
+		int next;
+
+		// Decision levels to blame for the failed values, conflictBackjumping only
+		long[] conflicts;
+	}
+
+	// Where unit c meets another unit: the positions in c that are shared,
+	// and the variables of the other unit that are not
+	private static final class Overlap
+	{
+		long[] inside;
+		int[] outside;
+	}
 }
@@ -0,0 +1,265 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves a batch of board files or boards, optionally spread over a pool of
+ * worker threads. Each worker owns its own Trail and builds a fresh solver for
+ * every board, so no search state is shared between threads. Per-board
+ * results are kept in input order and aggregated once all workers finish.
+ */
+
+public class BatchSolver
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private String engine;
+	private String valHeuristics;
+	private String varHeuristics;
+	private String cChecks;
+	private int numThreads;
+	private long timeoutMillis;
+	private long nodeBudget;
+
+	// Per-board results, indexed like the input array
+	private SolveStatus[] status;
+	private boolean[] solved;
+	private SudokuBoard[] solutions;
+	private float[] elapsedMiliSecs;
+	private SolverStatistics statistics = new SolverStatistics();
+	private long wallTimeNanos;
+
+	// Search metrics of every BTSolver run are added here when set, as
+	// each solve finishes
+	private SearchMetrics metrics = null;
+
+	// Restart schedule given to every BTSolver, none when null
+	private RestartPolicy restarts = null;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	// timeoutMillis and nodeBudget apply to every board on its own
+	public BatchSolver ( String engine, String val_sh, String var_sh, String cc, int numThreads,
+	                     long timeoutMillis, long nodeBudget )
+	{
+		this.engine        = engine;
+		this.valHeuristics = val_sh;
+		this.varHeuristics = var_sh;
+		this.cChecks       = cc;
+		this.numThreads    = Math.max( 1, numThreads );
+		this.timeoutMillis = timeoutMillis;
+		this.nodeBudget    = nodeBudget;
+	}
+
+	// =================================================================
+	// Engine Functions
+	// =================================================================
+
+	// Collects search metrics into metrics from now on, or stops with null
+	public void setSearchMetrics ( SearchMetrics metrics )
+	{
+		this.metrics = metrics;
+	}
+
+	// Restarts every BTSolver on the given schedule, or never with null
+	public void setRestarts ( RestartPolicy restarts )
+	{
+		this.restarts = restarts;
+	}
+
+	// Solves every board file, blocking until all of them are done. Files
+	// are parsed on the worker threads.
+	public void solve ( final File[] boards )
+	{
+		solve( boards.length, new BoardSource()
+		{
+			@Override
+			public SudokuBoard get ( int i )
+			{
+				return new SudokuBoard( boards[i] );
+			}
+		} );
+	}
+
+	// Solves boards that are already in memory, e.g. a chunk of a bulk file
+	public void solve ( final SudokuBoard[] boards )
+	{
+		solve( boards.length, new BoardSource()
+		{
+			@Override
+			public SudokuBoard get ( int i )
+			{
+				return boards[i];
+			}
+		} );
+	}
+
+	private void solve ( final int numBoards, final BoardSource boards )
+	{
+		status          = new SolveStatus[ numBoards ];
+		solved          = new boolean[ numBoards ];
+		solutions       = new SudokuBoard[ numBoards ];
+		elapsedMiliSecs = new float[ numBoards ];
+		statistics.clear();
+
+		final AtomicInteger nextBoard = new AtomicInteger();
+		final SolverStatistics[] workerStatistics = new SolverStatistics[ numThreads ];
+		List<Thread> workers = new ArrayList<Thread>();
+
+		long startTime = System.nanoTime();
+		for ( int w = 0; w < numThreads; ++w )
+		{
+			final SolverStatistics stats = new SolverStatistics();
+			final SearchMetrics searchMetrics = metrics != null ? new SearchMetrics( metrics ) : null;
+			workerStatistics[w] = stats;
+
+			Runnable worker = new Runnable()
+			{
+				@Override
+				public void run ( )
+				{
+					Trail trail = new Trail();
+					for ( int i = nextBoard.getAndIncrement(); i < numBoards; i = nextBoard.getAndIncrement() )
+					{
+						solveBoard( i, boards.get( i ), trail, stats, searchMetrics );
+						trail.clear();
+					}
+				}
+			};
+
+			// A single worker runs on the calling thread
+			if ( numThreads == 1 )
+			{
+				worker.run();
+				break;
+			}
+
+			Thread t = new Thread( worker, "BatchSolver-" + w );
+			t.start();
+			workers.add( t );
+		}
+
+		for ( Thread t : workers )
+		{
+			try
+			{
+				t.join();
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		wallTimeNanos = System.nanoTime() - startTime;
+
+		for ( SolverStatistics stats : workerStatistics )
+			if ( stats != null )
+				statistics.add( stats );
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public int getNumSolutions ( )
+	{
+		int numSolutions = 0;
+		for ( boolean s : solved )
+			if ( s )
+				numSolutions++;
+
+		return numSolutions;
+	}
+
+	// The solution of board i, or null if it was not solved
+	public SudokuBoard getSolution ( int i )
+	{
+		return solutions[i];
+	}
+
+	// Number of boards whose solve ended with the given status
+	public int getNumWithStatus ( SolveStatus s )
+	{
+		int count = 0;
+		for ( SolveStatus st : status )
+			if ( st == s )
+				count++;
+
+		return count;
+	}
+
+	// Sum of the solve times of the boards that were solved
+	public float getTotalTimeTaken ( )
+	{
+		float totalTimeTaken = 0;
+		for ( int i = 0; i < solved.length; ++i )
+			if ( solved[i] )
+				totalTimeTaken += elapsedMiliSecs[i];
+
+		return totalTimeTaken;
+	}
+
+	// Comma separated solve times of the solved boards, in input order
+	public String getTimeValues ( )
+	{
+		StringBuilder times = new StringBuilder();
+		String delim = "";
+		for ( int i = 0; i < solved.length; ++i )
+		{
+			if ( solved[i] )
+			{
+				times.append( delim ).append( elapsedMiliSecs[i] );
+				delim = ",";
+			}
+		}
+		return times.toString();
+	}
+
+	// Statistics summed over every board in the batch
+	public SolverStatistics getStatistics ( )
+	{
+		return statistics;
+	}
+
+	// Boards attempted per second of wall clock time
+	public double getThroughput ( )
+	{
+		return solved.length / ( wallTimeNanos / 1000000000.0 );
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	// Supplies board i to whichever worker claims it
+	private interface BoardSource
+	{
+		SudokuBoard get ( int i );
+	}
+
+	private void solveBoard ( int i, SudokuBoard board, Trail trail, SolverStatistics stats, SearchMetrics searchMetrics )
+	{
+		SudokuSolver solver = SolverFactory.create( board, trail, engine, valHeuristics, varHeuristics, cChecks );
+		if ( searchMetrics != null && solver instanceof BTSolver )
+			( (BTSolver) solver ).setSearchListener( searchMetrics );
+
+		if ( restarts != null && solver instanceof BTSolver )
+			( (BTSolver) solver ).setRestarts( restarts );
+
+		long startTime = System.nanoTime();
+		status[i] = solver.solve( SolveLimits.withTimeout( timeoutMillis, nodeBudget, null ) );
+		long endTime = System.nanoTime();
+
+		solved[i]          = solver.hasSolution();
+		solutions[i]       = solved[i] ? solver.getSolution() : null;
+		elapsedMiliSecs[i] = ((float)(endTime - startTime)) / 1000000;
+		stats.add( solver.getStatistics() );
+	}
+}
@@ -0,0 +1,299 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams puzzles out of a bulk file, one puzzle per line.
+ *
+ * The first line holds "p q". Every following line is one board in row
+ * major order: for N = p*q up to 35 each cell is a single character (0 or
+ * '.' for empty, 1-9, then A-Z for 10-35), otherwise cells are the usual
+ * base 36 tokens separated by spaces. Blank lines and lines starting with
+ * '#' are skipped.
+ *
+ * The file is read through a FileChannel into one reused buffer and parsed
+ * byte by byte straight into int arrays, so there is no Scanner, no String
+ * per token and no file open per board.
+ */
+
+public class BulkPuzzleReader implements Closeable
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+	private byte[] bytes = buffer.array();
+	private int position = 0;
+	private int limit = 0;
+	private boolean eof = false;
+
+	private int p;
+	private int q;
+	private int N;
+	private long lineNumber = 0;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public BulkPuzzleReader ( File file ) throws IOException
+	{
+		channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+
+		try
+		{
+			skipIgnoredLines();
+			p = readHeaderInt();
+			q = readHeaderInt();
+			N = p*q;
+			if ( p <= 0 || q <= 0 )
+				throw error( "Header must hold positive block sizes p and q" );
+
+			skipRestOfLine();
+		}
+		catch ( IOException e )
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public int getP ( )
+	{
+		return p;
+	}
+
+	public int getQ ( )
+	{
+		return q;
+	}
+
+	public int getN ( )
+	{
+		return N;
+	}
+
+	// =================================================================
+	// Reading
+	// =================================================================
+
+	// Reads the next board, or returns null at the end of the file
+	public SudokuBoard next ( ) throws IOException
+	{
+		int[][] board = new int[N][N];
+		int[] cells = new int[ N*N ];
+		if ( ! next( cells ) )
+			return null;
+
+		for ( int i = 0; i < N; ++i )
+			System.arraycopy( cells, i*N, board[i], 0, N );
+
+		return new SudokuBoard( p, q, board );
+	}
+
+	/**
+	 * Reads the next board into cells in row major order, which must hold
+	 * N*N values. Returns false at the end of the file.
+	 */
+	public boolean next ( int[] cells ) throws IOException
+	{
+		skipIgnoredLines();
+		if ( peek() == -1 )
+			return false;
+
+		if ( N <= 35 )
+			readCompact( cells );
+		else
+			readTokens( cells );
+
+		// Only trailing blanks may follow the last cell
+		int b = peek();
+		while ( b == ' ' || b == '\t' || b == '\r' )
+		{
+			position++;
+			b = peek();
+		}
+		if ( b != '\n' && b != -1 )
+			throw error( "Too many cells" );
+
+		return true;
+	}
+
+	@Override
+	public void close ( ) throws IOException
+	{
+		channel.close();
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private void readCompact ( int[] cells ) throws IOException
+	{
+		for ( int k = 0; k < cells.length; ++k )
+		{
+			int b = peek();
+			if ( b == -1 || b == '\n' || b == '\r' )
+				throw error( "Expected " + cells.length + " cells but found " + k );
+
+			position++;
+			int value = b == '.' ? 0 : digit( b );
+			if ( value < 0 || value > N )
+				throw error( "Invalid cell '" + (char) b + "'" );
+
+			cells[k] = value;
+		}
+	}
+
+	private void readTokens ( int[] cells ) throws IOException
+	{
+		for ( int k = 0; k < cells.length; ++k )
+		{
+			int b = peek();
+			while ( b == ' ' || b == '\t' )
+			{
+				position++;
+				b = peek();
+			}
+
+			if ( digit( b ) < 0 )
+				throw error( "Expected " + cells.length + " cells but found " + k );
+
+			int value = 0;
+			for ( int d = digit( b ); d >= 0; d = digit( b ) )
+			{
+				value = value * 36 + d;
+				position++;
+				b = peek();
+			}
+
+			if ( value > N )
+				throw error( "Invalid cell " + value );
+
+			cells[k] = value;
+		}
+	}
+
+	private int readHeaderInt ( ) throws IOException
+	{
+		int b = peek();
+		while ( b == ' ' || b == '\t' )
+		{
+			position++;
+			b = peek();
+		}
+
+		if ( b < '0' || b > '9' )
+			throw error( "Header must start with \"p q\"" );
+
+		int value = 0;
+		while ( b >= '0' && b <= '9' )
+		{
+			value = value * 10 + ( b - '0' );
+			position++;
+			b = peek();
+		}
+		return value;
+	}
+
+	// Skips blank and comment lines, leaving the reader at a line start
+	private void skipIgnoredLines ( ) throws IOException
+	{
+		while ( true )
+		{
+			int start = peek();
+			if ( start == '#' )
+			{
+				skipRestOfLine();
+				continue;
+			}
+
+			int b = start;
+			while ( b == ' ' || b == '\t' || b == '\r' )
+			{
+				position++;
+				b = peek();
+			}
+
+			if ( b != '\n' )
+				return;
+
+			position++;
+			lineNumber++;
+		}
+	}
+
+	private void skipRestOfLine ( ) throws IOException
+	{
+		lineNumber++;
+		for ( int b = peek(); b != -1; b = peek() )
+		{
+			position++;
+			if ( b == '\n' )
+				return;
+		}
+	}
+
+	// Base 36 digit value of b, either case, or -1
+	private static int digit ( int b )
+	{
+		if ( b >= '0' && b <= '9' )
+			return b - '0';
+
+		if ( b >= 'A' && b <= 'Z' )
+			return b - 'A' + 10;
+
+		if ( b >= 'a' && b <= 'z' )
+			return b - 'a' + 10;
+
+		return -1;
+	}
+
+	// The next byte without consuming it, or -1 at the end of the file
+	private int peek ( ) throws IOException
+	{
+		if ( position == limit && ! fill() )
+			return -1;
+
+		return bytes[ position ];
+	}
+
+	private boolean fill ( ) throws IOException
+	{
+		if ( eof )
+			return false;
+
+		buffer.clear();
+		int read = 0;
+		while ( read == 0 )
+			read = channel.read( buffer );
+
+		if ( read < 0 )
+		{
+			eof = true;
+			return false;
+		}
+
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	private IOException error ( String message )
+	{
+		return new IOException( "Line " + ( lineNumber + 1 ) + ": " + message );
+	}
+}
@@ -0,0 +1,95 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * Writes boards in the bulk format read by BulkPuzzleReader: a "p q"
+ * header line and then one board per line. Each line is encoded into a
+ * reused byte array and handed to a buffered stream.
+ */
+
+public class BulkPuzzleWriter implements Closeable
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private OutputStream out;
+	private int p;
+	private int q;
+	private int N;
+	private byte[] line;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public BulkPuzzleWriter ( File file, int p, int q ) throws IOException
+	{
+		this.out = new BufferedOutputStream( Files.newOutputStream( file.toPath() ), BUFFER_SIZE );
+		this.p = p;
+		this.q = q;
+		this.N = p*q;
+
+		// Token lines need up to two base 36 digits and a space per cell
+		this.line = new byte[ N <= 35 ? N*N + 1 : 3*N*N ];
+
+		out.write( ( p + " " + q + "\n" ).getBytes( "US-ASCII" ) );
+	}
+
+	// =================================================================
+	// Writing
+	// =================================================================
+
+	public void write ( SudokuBoard board ) throws IOException
+	{
+		if ( board.getP() != p || board.getQ() != q )
+			throw new IOException( "Board is " + board.getP() + "x" + board.getQ() + ", file is " + p + "x" + q );
+
+		int length = 0;
+		for ( int[] row : board.getBoard() )
+		{
+			for ( int value : row )
+			{
+				if ( N <= 35 )
+				{
+					line[ length++ ] = (byte) digit( value );
+				}
+				else
+				{
+					if ( length > 0 )
+						line[ length++ ] = ' ';
+
+					if ( value >= 36 )
+						line[ length++ ] = (byte) digit( value / 36 );
+
+					line[ length++ ] = (byte) digit( value % 36 );
+				}
+			}
+		}
+		line[ length++ ] = '\n';
+
+		out.write( line, 0, length );
+	}
+
+	@Override
+	public void close ( ) throws IOException
+	{
+		out.close();
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private static char digit ( int value )
+	{
+		return (char) ( value < 10 ? '0' + value : 'A' + value - 10 );
+	}
+}
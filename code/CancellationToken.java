@@ -0,0 +1,34 @@
+/**
+ * Lets another thread stop a running solve. Solvers poll the token from
+ * their search loop, so cancelling takes effect within a few nodes.
+ *
+ * A token may have a parent, in which case cancelling the parent cancels
+ * it as well, e.g. one race among several solves of the same request.
+ */
+
+public class CancellationToken
+{
+	private volatile boolean cancelled = false;
+	private final CancellationToken parent;
+
+	public CancellationToken ( )
+	{
+		this( null );
+	}
+
+	// A token that is also cancelled whenever parent is
+	public CancellationToken ( CancellationToken parent )
+	{
+		this.parent = parent;
+	}
+
+	public void cancel ( )
+	{
+		cancelled = true;
+	}
+
+	public boolean isCancelled ( )
+	{
+		return cancelled || ( parent != null && parent.isCancelled() );
+	}
+}
@@ -1,9 +1,15 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Constraint represents a NotEquals constraint on a set of variables.
  * Used to ensure none of the variables contained in the constraint have the same assignment.
+ *
+ * Inside a ConstraintNetwork the constraint also counts how many of its
+ * variables hold each value. The network updates the counts on every
+ * assignment and unassignment, including the ones the trail undoes, so
+ * isConsistent() is a single comparison instead of a pairwise scan.
  */
 
 public class Constraint
@@ -15,6 +21,14 @@ public class Constraint
 
 	public List<Variable> vars;
 
+	// Members assigned each value and the number of assignments that
+	// repeat a value. Null until the network starts tracking the constraint.
+	private int[] valueCounts = null;
+	private int repeats;
+
+	// Network the constraint is in, told whenever the members change
+	private ConstraintNetwork network = null;
+
 	// =================================================================
 	// Constructors
 	// =================================================================
@@ -33,9 +47,59 @@ public class Constraint
 	// Modifiers
 	// =================================================================
 
+	// The network, if any, rebuilds everything it derived from the members
 	public void addVariable ( Variable v )
 	{
 		vars.add( v );
+		if ( network != null )
+			network.constraintChanged( this );
+	}
+
+	// Registers the network to tell whenever the members change
+	public void attach ( ConstraintNetwork network )
+	{
+		this.network = network;
+	}
+
+	/**
+	 * Counts the values of the members that are assigned now. From then on
+	 * whoever changes the members must report it to assignmentChanged, as
+	 * ConstraintNetwork does. maxValue is the largest value expected, the
+	 * counts grow past it if need be.
+	 */
+	public void trackAssignments ( int maxValue )
+	{
+		valueCounts = new int[ maxValue + 1 ];
+		repeats     = 0;
+		for ( Variable v : vars )
+			assignmentChanged( 0, countedValue( v ) );
+	}
+
+	// Falls back to comparing the members pairwise
+	public void untrackAssignments ( )
+	{
+		valueCounts = null;
+	}
+
+	// A member counted with oldValue now counts with newValue, 0 for none
+	public void assignmentChanged ( int oldValue, int newValue )
+	{
+		if ( oldValue != 0 && --valueCounts[ oldValue ] >= 1 )
+			repeats--;
+
+		// A domain grown with Domain.add may hold values past maxValue
+		if ( newValue >= valueCounts.length )
+			valueCounts = Arrays.copyOf( valueCounts, Math.max( newValue + 1, 2 * valueCounts.length ) );
+
+		if ( newValue != 0 && valueCounts[ newValue ]++ >= 1 )
+			repeats++;
+	}
+
+	// The value v is counted with: its assignment once it is down to that
+	// single value, otherwise 0
+	public static int countedValue ( Variable v )
+	{
+		return v.isAssigned() && v.size() == 1 ? v.getDomain().first() : 0;
 	}
 
 	// =================================================================
@@ -66,6 +130,9 @@ public class Constraint
 	// Returns true if constraint is consistent, false otherwise
 	public boolean isConsistent ( )
 	{
+		if ( valueCounts != null )
+			return repeats == 0;
+
 		for ( Variable var : vars )
 		{
 			if ( ! var.isAssigned() )
@@ -13,8 +13,43 @@ public class ConstraintNetwork
 	// Properties
 	// =================================================================
 
-	private static List<Constraint> constraints;
-	private static List<Variable> variables;
+	private List<Constraint> constraints;
+	private List<Variable> variables;
+
+	// Built once from the constraints: peers[i] holds the indices of every
+	// variable sharing a constraint with variable i, and
+	// variableConstraints[i] the indices of the constraints containing it.
+	// Both are rebuilt lazily if the network is modified afterwards.
+	private int[][] peers;
+	private int[][] variableConstraints;
+
+	// Worklist of the variables modified since they were last propagated,
+	// held as a ring of variable indices. inQueue keeps each variable in
+	// it at most once, so the ring never needs more room than there are
+	// variables.
+	private int[] modifiedQueue = new int[0];
+	private boolean[] inQueue = new boolean[0];
+	private int queueHead;
+	private int queueSize;
+
+	// Constraints already listed by the current getModifiedConstraints
+	// call, marked by a stamp equal to listedEpoch
+	private int[] listedStamp = new int[0];
+	private int listedEpoch = 0;
+
+	// Domain values removed from any variable since construction
+	private long valuesRemoved = 0;
+
+	// Unassigned variables by domain size, kept only once asked for
+	private DomainBuckets buckets;
+
+	// Unassigned variables in each constraint, null until first asked for
+	private int[] unassignedCounts;
+
+	// Value each variable is counted with by its tracked constraints, and
+	// the number of constraints with a repeated value. Rebuilt with the index.
+	private int[] countedValues;
+	private int inconsistentConstraints;
 
 	// =================================================================
 	// Constructors
@@ -28,7 +63,6 @@ public class ConstraintNetwork
 
 	public ConstraintNetwork ( SudokuBoard sboard )
 	{
-		Variable.resetCounter();
 		int [][] board = sboard.getBoard();
 
 		List<Variable> temp = new ArrayList<Variable>();
@@ -125,6 +159,8 @@ public class ConstraintNetwork
 			}
 			add(c);
 		}
+
+		buildIndex();
 	}
 
 	// =================================================================
@@ -136,14 +172,23 @@ public class ConstraintNetwork
 		if ( ! constraints.contains( c ) )
 		{
 			constraints.add( c );
+			c.attach( this );
+			constraintChanged( c );
 		}
 	}
 
 	public void add ( Variable v )
 	{
-		if ( ! variables.contains( v ) )
+		if ( ! containsVariable( v ) )
 		{
+			v.setIndex( variables.size() );
 			variables.add( v );
+			peers = null;
+			buckets = null;
+			unassignedCounts = null;
+			untrackAssignments();
+			growQueue( variables.size() );
+			v.attach( this );
 		}
 	}
 
@@ -161,41 +206,60 @@ public class ConstraintNetwork
 		return variables;
 	}
 
+	public Variable getVariable ( int index )
+	{
+		return variables.get( index );
+	}
+
+	public Constraint getConstraint ( int index )
+	{
+		return constraints.get( index );
+	}
+
+	// Returns the indices of all variables that share a constraint with v.
+	// The array is shared, callers must not modify it.
+	public int[] getPeers ( Variable v )
+	{
+		ensureIndex();
+		return peers[ v.index() ];
+	}
+
+	// Returns the indices of the constraints that contain v.
+	// The array is shared, callers must not modify it.
+	public int[] getConstraintIndices ( Variable v )
+	{
+		ensureIndex();
+		return variableConstraints[ v.index() ];
+	}
+
 	// Returns all variables that share a constraint with v
 	public List<Variable> getNeighborsOfVariable ( Variable v )
 	{
-		Set<Variable> neighbors = new HashSet<Variable>();
+		int[] vPeers = getPeers( v );
+		List<Variable> neighbors = new ArrayList<Variable>( vPeers.length );
 
-		for ( Constraint c : constraints )
-		{
-			if ( c.contains( v ) )
-			{
-				neighbors.addAll( c.vars );
-			}
-		}
+		for ( int peer : vPeers )
+			neighbors.add( variables.get( peer ) );
 
-		neighbors.remove( v );
-		return new ArrayList<Variable>( neighbors );
+		return neighbors;
 	}
 
-	// Returns true is every constraint is consistent
+	// Returns true is every constraint is consistent, which the tracked
+	// assignment counts answer without looking at any constraint
 	public boolean isConsistent ( )
 	{
-		for ( Constraint c : constraints )
-			if ( ! c.isConsistent() )
-				return false;
-
-		return true;
+		ensureIndex();
+		return inconsistentConstraints == 0;
 	}
 
 	// Returns a list of constraints that contains v
 	public List<Constraint> getConstraintsContainingVariable ( Variable v )
 	{
-		List<Constraint> outList = new ArrayList<Constraint>();
+		int[] vConstraints = getConstraintIndices( v );
+		List<Constraint> outList = new ArrayList<Constraint>( vConstraints.length );
 
-		for ( Constraint c : constraints )
-			if ( c.contains( v ) )
-				outList.add( c );
+		for ( int c : vConstraints )
+			outList.add( constraints.get( c ) );
 
 		return outList;
 	}
@@ -205,7 +269,8 @@ public class ConstraintNetwork
 	 * modified since the last call to this method.
 	 *
 	 * After getting the constraints, it will reset each variable to
-	 * unmodified.
+	 * unmodified. Only the variables on the worklist are visited, so the
+	 * cost follows the number of changes rather than the size of the board.
 	 *
 	 * Note* The first call to this method returns the constraints containing
 	 * the initialized variables.
@@ -213,15 +278,246 @@ public class ConstraintNetwork
 	public List<Constraint> getModifiedConstraints ( )
 	{
 		List<Constraint> mConstraints = new ArrayList<Constraint>();
+		if ( listedStamp.length < constraints.size() )
+			listedStamp = new int[ constraints.size() ];
+
+		listedEpoch++;
+		for ( int i = pollModifiedVariable(); i != -1; i = pollModifiedVariable() )
+		{
+			for ( int c : variableConstraints[i] )
+			{
+				if ( listedStamp[c] != listedEpoch )
+				{
+					listedStamp[c] = listedEpoch;
+					mConstraints.add( constraints.get( c ) );
+				}
+			}
+		}
+
+		return mConstraints;
+	}
+
+	/**
+	 * Removes the next modified variable from the worklist, resets it to
+	 * unmodified and returns its index, or -1 if nothing is left.
+	 */
+	public int pollModifiedVariable ( )
+	{
+		ensureIndex();
+		if ( queueSize == 0 )
+			return -1;
+
+		int i = modifiedQueue[ queueHead ];
+		queueHead = ( queueHead + 1 ) % modifiedQueue.length;
+		queueSize--;
+		inQueue[i] = false;
+		variables.get( i ).setModified( false );
+		return i;
+	}
+
+	// Drops every pending modification, e.g. after the trail restored them
+	public void clearModified ( )
+	{
+		while ( queueSize > 0 )
+			pollModifiedVariable();
+	}
+
+	// Buckets of the unassigned variables by domain size, from now on kept
+	// up to date with every change. trackDegree also counts unassigned peers.
+	public DomainBuckets getDomainBuckets ( boolean trackDegree )
+	{
+		if ( buckets == null || ( trackDegree && ! buckets.tracksDegree() ) )
+			buckets = new DomainBuckets( this, trackDegree );
+
+		return buckets;
+	}
+
+	// Number of unassigned variables in the constraint at index c, from
+	// now on kept up to date with every assignment and unassignment
+	public int getUnassignedCount ( int c )
+	{
+		if ( unassignedCounts == null )
+			countUnassigned();
+
+		return unassignedCounts[c];
+	}
+
+	// Domain values removed since construction, restores not subtracted
+	public long getValuesRemoved ( )
+	{
+		return valuesRemoved;
+	}
+
+	// Called by a variable for every value it loses
+	public void valuesRemoved ( int count )
+	{
+		valuesRemoved += count;
+	}
+
+	// Called by a variable after its domain size or assignment changed
+	public void variableChanged ( Variable v, boolean wasAssigned )
+	{
+		if ( buckets != null )
+			buckets.changed( v, wasAssigned );
+
+		if ( unassignedCounts != null && wasAssigned != v.isAssigned() )
+		{
+			int delta = wasAssigned ? 1 : -1;
+			for ( int c : variableConstraints[ v.index() ] )
+				unassignedCounts[c] += delta;
+		}
 
+		// A reassignment moves the count from the old value to the new one
+		int value = countedValues != null ? Constraint.countedValue( v ) : 0;
+		if ( countedValues != null && value != countedValues[ v.index() ] )
+		{
+			int oldValue = countedValues[ v.index() ];
+			countedValues[ v.index() ] = value;
+			for ( int c : variableConstraints[ v.index() ] )
+			{
+				Constraint constraint = constraints.get( c );
+				boolean wasConsistent = constraint.isConsistent();
+				constraint.assignmentChanged( oldValue, value );
+				if ( wasConsistent != constraint.isConsistent() )
+					inconsistentConstraints += wasConsistent ? 1 : -1;
+			}
+		}
+	}
+
+	// Called when c was added or its members changed: the peers, buckets
+	// and counts derived from the members are dropped and rebuilt on demand
+	public void constraintChanged ( Constraint c )
+	{
+		peers = null;
+		buckets = null;
+		unassignedCounts = null;
+		untrackAssignments();
+	}
+
+	// Called by a variable whenever its domain or assignment changes
+	public void variableModified ( Variable v )
+	{
+		int i = v.index();
+		if ( inQueue[i] )
+			return;
+
+		inQueue[i] = true;
+		modifiedQueue[ ( queueHead + queueSize ) % modifiedQueue.length ] = i;
+		queueSize++;
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private boolean containsVariable ( Variable v )
+	{
+		int i = v.index();
+		return i >= 0 && i < variables.size() && variables.get( i ) == v;
+	}
+
+	private void growQueue ( int capacity )
+	{
+		if ( capacity <= modifiedQueue.length )
+			return;
+
+		int[] grown = new int[ Math.max( capacity, 2 * modifiedQueue.length ) ];
+		for ( int k = 0; k < queueSize; ++k )
+			grown[k] = modifiedQueue[ ( queueHead + k ) % modifiedQueue.length ];
+
+		modifiedQueue = grown;
+		inQueue = Arrays.copyOf( inQueue, grown.length );
+		queueHead = 0;
+	}
+
+	private void countUnassigned ( )
+	{
+		ensureIndex();
+		unassignedCounts = new int[ constraints.size() ];
+		for ( int c = 0; c < constraints.size(); ++c )
+			for ( Variable v : constraints.get( c ).vars )
+				if ( ! v.isAssigned() )
+					unassignedCounts[c]++;
+	}
+
+	// Starts the assignment counts of every constraint from the variables
+	private void trackAssignments ( )
+	{
+		// The largest value any domain holds, N for a fresh board
+		int maxValue = 0;
+		for ( Variable v : variables )
+			for ( int x = v.getDomain().first(); x != -1; x = v.getDomain().next( x ) )
+				maxValue = Math.max( maxValue, x );
+
+		countedValues = new int[ variables.size() ];
+		for ( Variable v : variables )
+			countedValues[ v.index() ] = Constraint.countedValue( v );
+
+		inconsistentConstraints = 0;
 		for ( Constraint c : constraints )
-			if ( c.isModified() )
-				mConstraints.add( c );
+		{
+			c.trackAssignments( maxValue );
+			if ( ! c.isConsistent() )
+				inconsistentConstraints++;
+		}
+	}
 
-		for ( Variable v : getVariables() )
-			v.setModified( false );
+	private void untrackAssignments ( )
+	{
+		countedValues = null;
+		for ( Constraint c : constraints )
+			c.untrackAssignments();
+	}
 
-		return mConstraints;
+	private void ensureIndex ( )
+	{
+		if ( peers == null )
+			buildIndex();
+	}
+
+	private void buildIndex ( )
+	{
+		int n = variables.size();
+
+		int[] constraintCount = new int[n];
+		for ( Constraint c : constraints )
+			for ( Variable v : c.vars )
+				constraintCount[ v.index() ]++;
+
+		variableConstraints = new int[n][];
+		for ( int i = 0; i < n; ++i )
+			variableConstraints[i] = new int[ constraintCount[i] ];
+
+		int[] fill = new int[n];
+		for ( int c = 0; c < constraints.size(); ++c )
+			for ( Variable v : constraints.get( c ).vars )
+				variableConstraints[ v.index() ][ fill[ v.index() ]++ ] = c;
+
+		// stamp[j] == i + 1 marks j as already collected for variable i
+		int[] stamp = new int[n];
+		int[] buffer = new int[n];
+		peers = new int[n][];
+		for ( int i = 0; i < n; ++i )
+		{
+			int count = 0;
+			stamp[i] = i + 1;
+			for ( int c : variableConstraints[i] )
+			{
+				for ( Variable v : constraints.get( c ).vars )
+				{
+					int j = v.index();
+					if ( stamp[j] != i + 1 )
+					{
+						stamp[j] = i + 1;
+						buffer[ count++ ] = j;
+					}
+				}
+			}
+			peers[i] = Arrays.copyOf( buffer, count );
+			Arrays.sort( peers[i] );
+		}
+
+		trackAssignments();
 	}
 
 	// =================================================================
@@ -270,4 +566,10 @@ public class ConstraintNetwork
 		}
 		return new SudokuBoard( p, q, board );
 	}
+
+	// The current domains and assignments packed for FlatSolver
+	public FlatState toFlatState ( int p, int q )
+	{
+		return new FlatState( this, p, q );
+	}
 }
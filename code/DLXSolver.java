@@ -0,0 +1,360 @@
+/**
+ * Exact cover engine for p x q Sudoku, using Knuth's Algorithm X with
+ * Dancing Links.
+ *
+ * Every candidate (row, col, value) is a matrix row covering four columns:
+ * the cell, the value in the row, the value in the column and the value in
+ * the block. The links are kept in parallel int arrays rather than node
+ * objects, and the search runs on an explicit stack so deep boards do not
+ * need deep Java stacks.
+ */
+
+public class DLXSolver implements SudokuSolver
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private SudokuBoard sudokuGrid;
+	private int p, q, N;
+
+	// Node 0 is the root, nodes 1..numColumns are column headers and the
+	// rest are matrix entries
+	private int[] left, right, up, down, column;
+	private int[] columnSize;
+	private int numColumns;
+	private int numNodes;
+
+	// For every entry node, the candidate it belongs to: (row*N + col)*N + value-1
+	private int[] candidate;
+
+	// Chosen entry node at each search depth
+	private int[] choices;
+	private int depth;
+
+	private boolean hasSolution = false;
+	private int solutionCount = 0;
+	private SudokuBoard firstSolution = null;
+	private boolean consistent = true;
+	private SolverStatistics statistics = new SolverStatistics();
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public DLXSolver ( SudokuBoard sboard )
+	{
+		this.sudokuGrid = sboard;
+		this.p = sboard.getP();
+		this.q = sboard.getQ();
+		this.N = p*q;
+
+		buildMatrix( sboard.getBoard() );
+	}
+
+	// =================================================================
+	// Engine Functions
+	// =================================================================
+
+	public SolveStatus solve ( SolveLimits limits )
+	{
+		long startTime = System.nanoTime();
+		SolveStatus status = consistent ? search( limits, 1 ) : SolveStatus.UNSATISFIABLE;
+		statistics.addSolveTime( System.nanoTime() - startTime );
+		return status;
+	}
+
+	// Enumerates solutions up to limit, as BTSolver.countSolutions does
+	public SolveStatus countSolutions ( int limit, SolveLimits limits )
+	{
+		long startTime = System.nanoTime();
+		SolveStatus status = consistent ? search( limits, limit ) : SolveStatus.UNSATISFIABLE;
+		statistics.addSolveTime( System.nanoTime() - startTime );
+		return status;
+	}
+
+	private SolveStatus search ( SolveLimits limits, int solutionLimit )
+	{
+		solutionCount = 0;
+		firstSolution = null;
+		depth = 0;
+		int node = 0;
+		boolean backtracking = false;
+		long startNodes = statistics.getNodes();
+		long steps = 0;
+
+		while ( true )
+		{
+			if ( ! backtracking )
+			{
+				SolveStatus stop = limits.check( statistics.getNodes() - startNodes, ++steps );
+				if ( stop != null )
+				{
+					unwind();
+					return stop;
+				}
+
+				if ( right[0] == 0 )
+				{
+					if ( solutionCount++ == 0 )
+					{
+						hasSolution = true;
+						firstSolution = currentBoard();
+					}
+
+					if ( solutionCount >= solutionLimit )
+					{
+						unwind();
+						return SolveStatus.SOLVED;
+					}
+
+					// Keep enumerating from the last choice
+					backtracking = true;
+				}
+			}
+
+			if ( ! backtracking )
+			{
+				int c = chooseColumn();
+				cover( c );
+				node = down[c];
+			}
+			else
+			{
+				// Undo the choice at this depth and move to the next row
+				if ( --depth < 0 )
+					return solutionCount > 0 ? SolveStatus.SOLVED : SolveStatus.UNSATISFIABLE;
+
+				node = choices[ depth ];
+				for ( int j = left[node]; j != node; j = left[j] )
+					uncover( column[j] );
+
+				statistics.addBacktrack();
+				node = down[node];
+			}
+
+			int c = column[node];
+			if ( node == c )
+			{
+				// Column exhausted, give it back and backtrack further
+				uncover( c );
+				backtracking = true;
+				continue;
+			}
+
+			statistics.addNode();
+			choices[ depth++ ] = node;
+			for ( int j = right[node]; j != node; j = right[j] )
+				cover( column[j] );
+
+			backtracking = false;
+		}
+	}
+
+	public boolean hasSolution ( )
+	{
+		return hasSolution;
+	}
+
+	public SudokuBoard getSolution ( )
+	{
+		if ( firstSolution != null )
+			return firstSolution;
+
+		return currentBoard();
+	}
+
+	// Number of solutions found by the last solve or countSolutions
+	public int getSolutionCount ( )
+	{
+		return solutionCount;
+	}
+
+	public SolverStatistics getStatistics ( )
+	{
+		return new SolverStatistics( statistics );
+	}
+
+	// =================================================================
+	// Dancing Links
+	// =================================================================
+
+	// Smallest column first, which is MRV in exact cover terms
+	private int chooseColumn ( )
+	{
+		int best = right[0];
+		for ( int c = right[best]; c != 0; c = right[c] )
+			if ( columnSize[c] < columnSize[best] )
+				best = c;
+
+		return best;
+	}
+
+	private void cover ( int c )
+	{
+		right[ left[c] ] = right[c];
+		left[ right[c] ] = left[c];
+		for ( int i = down[c]; i != c; i = down[i] )
+		{
+			for ( int j = right[i]; j != i; j = right[j] )
+			{
+				down[ up[j] ] = down[j];
+				up[ down[j] ] = up[j];
+				columnSize[ column[j] ]--;
+			}
+		}
+	}
+
+	private void uncover ( int c )
+	{
+		for ( int i = up[c]; i != c; i = up[i] )
+		{
+			for ( int j = left[i]; j != i; j = left[j] )
+			{
+				columnSize[ column[j] ]++;
+				down[ up[j] ] = j;
+				up[ down[j] ] = j;
+			}
+		}
+		right[ left[c] ] = c;
+		left[ right[c] ] = c;
+	}
+
+	// Gives back every row chosen on the search path, newest first, so the
+	// next search starts from the givens alone
+	private void unwind ( )
+	{
+		while ( depth > 0 )
+		{
+			int node = choices[ --depth ];
+			for ( int j = left[node]; j != node; j = left[j] )
+				uncover( column[j] );
+
+			uncover( column[node] );
+		}
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	// The givens plus the rows chosen on the current search path
+	private SudokuBoard currentBoard ( )
+	{
+		int[][] board = new int[N][N];
+		int[][] given = sudokuGrid.getBoard();
+		for ( int i = 0; i < N; ++i )
+			for ( int j = 0; j < N; ++j )
+				board[i][j] = given[i][j];
+
+		if ( hasSolution )
+		{
+			for ( int k = 0; k < depth; ++k )
+			{
+				int cand = candidate[ choices[k] ];
+				board[ cand / N / N ][ cand / N % N ] = cand % N + 1;
+			}
+		}
+
+		return new SudokuBoard( p, q, board );
+	}
+
+	private void buildMatrix ( int[][] board )
+	{
+		numColumns = 4 * N * N;
+		int capacity = 1 + numColumns + 4 * N * N * N;
+
+		left       = new int[capacity];
+		right      = new int[capacity];
+		up         = new int[capacity];
+		down       = new int[capacity];
+		column     = new int[capacity];
+		candidate  = new int[capacity];
+		columnSize = new int[ numColumns + 1 ];
+		choices    = new int[ N * N ];
+
+		for ( int c = 0; c <= numColumns; ++c )
+		{
+			left[c]   = c == 0 ? numColumns : c - 1;
+			right[c]  = c == numColumns ? 0 : c + 1;
+			up[c]     = c;
+			down[c]   = c;
+			column[c] = c;
+		}
+		numNodes = numColumns + 1;
+
+		for ( int row = 0; row < N; ++row )
+		{
+			for ( int col = 0; col < N; ++col )
+			{
+				for ( int value = 1; value <= N; ++value )
+				{
+					if ( board[row][col] != 0 && board[row][col] != value )
+						continue;
+
+					int block = ( row / p ) * p + col / q;
+					int first = numNodes;
+					addNode( first, 1 + row * N + col );
+					addNode( first, 1 + N * N     + row * N + value - 1 );
+					addNode( first, 1 + 2 * N * N + col * N + value - 1 );
+					addNode( first, 1 + 3 * N * N + block * N + value - 1 );
+
+					for ( int k = first; k < numNodes; ++k )
+						candidate[k] = ( row * N + col ) * N + value - 1;
+				}
+			}
+		}
+
+		// Commit the givens up front; clashing givens leave no solution
+		for ( int row = 0; row < N && consistent; ++row )
+		{
+			for ( int col = 0; col < N && consistent; ++col )
+			{
+				if ( board[row][col] != 0 )
+					consistent = selectGiven( 1 + row * N + col );
+			}
+		}
+	}
+
+	// Appends an entry for column c to the row starting at node first
+	private void addNode ( int first, int c )
+	{
+		int n = numNodes++;
+		column[n] = c;
+		columnSize[c]++;
+
+		up[n] = up[c];
+		down[n] = c;
+		down[ up[c] ] = n;
+		up[c] = n;
+
+		if ( n == first )
+		{
+			left[n] = n;
+			right[n] = n;
+		}
+		else
+		{
+			left[n] = left[first];
+			right[n] = first;
+			right[ left[first] ] = n;
+			left[first] = n;
+		}
+	}
+
+	// Covers the only row left in a given cell's column. A clashing given
+	// earlier on has already removed that row, leaving the column empty.
+	private boolean selectGiven ( int cellColumn )
+	{
+		if ( columnSize[ cellColumn ] == 0 )
+			return false;
+
+		int node = down[ cellColumn ];
+		cover( cellColumn );
+		for ( int j = right[node]; j != node; j = right[j] )
+			cover( column[j] );
+
+		return true;
+	}
+}
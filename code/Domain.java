@@ -1,10 +1,15 @@
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Represents the domain of a variable, i.e. the possible values that each
  * variable may assign.
+ *
+ * Values are stored as bits in a long[] (bit v set means v is possible), so
+ * contains, add and remove are O(1) and never box. Boards up to N = 63 fit
+ * in a single word; larger boards simply use more words.
  */
 
 public class Domain implements Iterable<Integer>
@@ -14,7 +19,8 @@ public class Domain implements Iterable<Integer>
 	// Properties
 	// =================================================================
 
-	private ArrayList<Integer> values = new ArrayList<Integer>();
+	private long[] words;
+	private int size;
 	private boolean modified;
 
 	// =================================================================
@@ -24,32 +30,39 @@ public class Domain implements Iterable<Integer>
 	// Constructs a domain with a single value
 	public Domain ( int value )
 	{
-		values.add(value);
+		words = new long[ wordIndex( value ) + 1 ];
+		add( value );
 	}
 
 	// Constructs a domain with an array of values
 	public Domain ( int[] values )
 	{
+		words = new long[ wordIndex( max( values ) ) + 1 ];
 		for ( int i = 0; i < values.length; ++i )
 		{
-			this.values.add( values[i] );
+			add( values[i] );
 		}
 	}
 
 	// Constructs a domain from a list of values
 	public Domain ( List<Integer> values )
 	{
-		this.values.clear();
-		this.values.addAll( values );
+		int max = 0;
+		for ( int value : values )
+			max = Math.max( max, value );
+
+		words = new long[ wordIndex( max ) + 1 ];
+		for ( int value : values )
+		{
+			add( value );
+		}
 	}
 
 	// Copy Constructor
 	public Domain ( Domain d )
 	{
-		for ( Integer value : d.getValues() )
-		{
-			this.values.add( value );
-		}
+		this.words = d.words.clone();
+		this.size  = d.size;
 	}
 
 	// =================================================================
@@ -57,30 +70,34 @@ public class Domain implements Iterable<Integer>
 	// =================================================================
 
 	// Note, Domain is iterable. You can use "for ( Integer i : Domain )"
+	// This returns a fresh list in ascending order; use first()/next() on
+	// hot paths to avoid the allocation.
 	public ArrayList<Integer> getValues()
 	{
+		ArrayList<Integer> values = new ArrayList<Integer>( size );
+		for ( int v = first(); v != -1; v = next( v ) )
+			values.add( v );
+
 		return values;
 	}
 
 	// Checks if value exists within the domain
 	public boolean contains ( int value )
 	{
-		if ( values.contains( value ) )
-			return true;
-
-		return false;
+		int w = wordIndex( value );
+		return value >= 0 && w < words.length && ( words[w] & ( 1L << value ) ) != 0;
 	}
 
 	// Returns number of values in the domain
 	public int size ( )
 	{
-		return values.size();
+		return size;
 	}
 
 	// Returns true if no values are contained in the domain
 	public boolean isEmpty ( )
 	{
-		return values.isEmpty();
+		return size == 0;
 	}
 
 	// Returns whether or not the domain has been modified
@@ -89,6 +106,56 @@ public class Domain implements Iterable<Integer>
 		return modified;
 	}
 
+	// Number of long words backing the domain
+	public int wordCount ( )
+	{
+		return words.length;
+	}
+
+	// Word w of the bitmask, 0 past the end
+	public long word ( int w )
+	{
+		return w < words.length ? words[w] : 0;
+	}
+
+	// Copies the bitmask into dst at offset, returns the words written
+	public int saveTo ( long[] dst, int offset )
+	{
+		System.arraycopy( words, 0, dst, offset, words.length );
+		return words.length;
+	}
+
+	// Returns the smallest value in the domain, or -1 if it is empty
+	public int first ( )
+	{
+		for ( int w = 0; w < words.length; ++w )
+			if ( words[w] != 0 )
+				return ( w << 6 ) + Long.numberOfTrailingZeros( words[w] );
+
+		return -1;
+	}
+
+	// Returns the smallest value greater than value, or -1 if there is none
+	public int next ( int value )
+	{
+		int from = value + 1;
+		int w = wordIndex( from );
+		if ( w >= words.length )
+			return -1;
+
+		long word = words[w] & ( -1L << from );
+		while ( true )
+		{
+			if ( word != 0 )
+				return ( w << 6 ) + Long.numberOfTrailingZeros( word );
+
+			if ( ++w == words.length )
+				return -1;
+
+			word = words[w];
+		}
+	}
+
 	// =================================================================
 	// Modifiers
 	// =================================================================
@@ -96,23 +163,55 @@ public class Domain implements Iterable<Integer>
 	// Adds a value to the domain
 	public void add ( int value )
 	{
-		if ( ! contains( value ) )
-			this.values.add( value );
+		int w = wordIndex( value );
+		if ( w >= words.length )
+		{
+			long[] grown = new long[ w + 1 ];
+			System.arraycopy( words, 0, grown, 0, words.length );
+			words = grown;
+		}
+
+		long bit = 1L << value;
+		if ( ( words[w] & bit ) == 0 )
+		{
+			words[w] |= bit;
+			size++;
+		}
 	}
 
 	// Remove a value from the domain
 	public boolean remove ( int value )
 	{
-		Integer v = value;
-
 		if ( ! contains( value ) )
 			return false;
 
 		setModified( true );
-		values.remove( v );
+		words[ wordIndex( value ) ] &= ~( 1L << value );
+		size--;
 		return true;
 	}
 
+	// Reduces the domain to the single value given, in place
+	public void assign ( int value )
+	{
+		for ( int w = 0; w < words.length; ++w )
+			words[w] = 0;
+
+		size = 0;
+		add( value );
+	}
+
+	// Overwrites this domain with a bitmask written by saveTo, in place
+	public void restoreFrom ( long[] src, int offset )
+	{
+		size = 0;
+		for ( int w = 0; w < words.length; ++w )
+		{
+			words[w] = src[ offset + w ];
+			size += Long.bitCount( words[w] );
+		}
+	}
+
 	// Sets the modified flag
 	public void setModified ( boolean modified )
 	{
@@ -126,7 +225,27 @@ public class Domain implements Iterable<Integer>
 	@Override
 	public Iterator<Integer> iterator ( )
 	{
-		return values.iterator();
+		return new Iterator<Integer>()
+		{
+			private int nextValue = first();
+
+			@Override
+			public boolean hasNext ( )
+			{
+				return nextValue != -1;
+			}
+
+			@Override
+			public Integer next ( )
+			{
+				if ( nextValue == -1 )
+					throw new NoSuchElementException();
+
+				int value = nextValue;
+				nextValue = Domain.this.next( value );
+				return value;
+			}
+		};
 	}
 
 	// =================================================================
@@ -137,13 +256,30 @@ public class Domain implements Iterable<Integer>
 	{
 		StringBuilder sb = new StringBuilder("{");
 		String delim = "";
-		for (Integer i : values)
+		for ( int v = first(); v != -1; v = next( v ) )
 		{
-			sb.append(delim).append(i);
+			sb.append(delim).append(v);
 			delim = ",";
 		}
 		sb.append("}");
 		return sb.toString();
 	}
-}
 
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private static int wordIndex ( int value )
+	{
+		return value >>> 6;
+	}
+
+	private static int max ( int[] values )
+	{
+		int max = 0;
+		for ( int value : values )
+			max = Math.max( max, value );
+
+		return max;
+	}
+}
@@ -0,0 +1,370 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Unassigned variables of a ConstraintNetwork grouped by domain size, for
+ * MRV selection without scanning every variable.
+ *
+ * Bucket s is a bitset of the unassigned variables whose domain has s
+ * values, and a mask of the non-empty buckets gives the smallest size.
+ * The network reports every change of a domain size or assignment,
+ * including the restores done by the trail, so the buckets always match
+ * the variables and need no undo of their own.
+ *
+ * With degrees tracked every bucket is further split by the number of
+ * unassigned peers, cell (s, d) at index s * degrees + d, with a mask of
+ * the non-empty degrees per size. The lowest index of a cell is its first
+ * set bit, so selection is a few word scans instead of a walk over the
+ * bucket.
+ */
+
+public class DomainBuckets
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private ConstraintNetwork network;
+
+	// Domain size of each variable, -1 once assigned
+	private int[] sizeOf;
+
+	// Unassigned variables of each domain size, and the non-empty sizes
+	private IndexSets bySize;
+	private long[] sizeMask;
+
+	// Unassigned peers of each variable, null unless degrees are tracked
+	private int[] unassignedDegree;
+
+	// Unassigned variables of each (size, degree) cell, and per size the
+	// non-empty degrees, if degrees are tracked
+	private int degrees;
+	private int degreeWords;
+	private IndexSets byCell;
+	private long[] degreeMask;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public DomainBuckets ( ConstraintNetwork network, boolean trackDegree )
+	{
+		this.network = network;
+
+		int numVariables = network.getVariables().size();
+		int maxSize = 0;
+		for ( Variable v : network.getVariables() )
+			maxSize = Math.max( maxSize, v.getDomain().size() );
+
+		sizeOf   = new int[ numVariables ];
+		bySize   = new IndexSets( maxSize + 1, numVariables );
+		sizeMask = new long[ ( maxSize + 64 ) >>> 6 ];
+		Arrays.fill( sizeOf, -1 );
+
+		if ( trackDegree )
+		{
+			unassignedDegree = new int[ numVariables ];
+			int maxDegree = 0;
+			for ( int i = 0; i < numVariables; ++i )
+			{
+				for ( int peer : network.getPeers( network.getVariable( i ) ) )
+					if ( ! network.getVariable( peer ).isAssigned() )
+						unassignedDegree[i]++;
+
+				maxDegree = Math.max( maxDegree, network.getPeers( network.getVariable( i ) ).length );
+			}
+
+			degrees     = maxDegree + 1;
+			degreeWords = ( degrees + 63 ) >>> 6;
+			byCell      = new IndexSets( ( maxSize + 1 ) * degrees, numVariables );
+			degreeMask  = new long[ ( maxSize + 1 ) * degreeWords ];
+		}
+
+		for ( int i = 0; i < numVariables; ++i )
+		{
+			Variable v = network.getVariable( i );
+			if ( ! v.isAssigned() )
+				insert( i, v.size() );
+		}
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public boolean tracksDegree ( )
+	{
+		return unassignedDegree != null;
+	}
+
+	// Size of the smallest unassigned domain, or -1 if all are assigned
+	public int minimumSize ( )
+	{
+		for ( int w = 0; w < sizeMask.length; ++w )
+			if ( sizeMask[w] != 0 )
+				return ( w << 6 ) + Long.numberOfTrailingZeros( sizeMask[w] );
+
+		return -1;
+	}
+
+	// Most unassigned peers of a variable with size values, if degrees
+	// are tracked, or -1 if there is none
+	public int maximumDegree ( int size )
+	{
+		for ( int w = degreeWords - 1; w >= 0; --w )
+		{
+			long mask = degreeMask[ size * degreeWords + w ];
+			if ( mask != 0 )
+				return ( w << 6 ) + 63 - Long.numberOfLeadingZeros( mask );
+		}
+		return -1;
+	}
+
+	// Lowest unassigned variable above i with size values and degree
+	// unassigned peers, the first one when i is -1, or -1 past the last
+	public int next ( int size, int degree, int i )
+	{
+		return byCell.next( size * degrees + degree, i );
+	}
+
+	// Unassigned variable with the smallest domain, lowest index on ties,
+	// or -1 if every variable is assigned
+	public int selectMinimumSize ( )
+	{
+		int size = minimumSize();
+		return size == -1 ? -1 : bySize.next( size, -1 );
+	}
+
+	// Of the smallest domains, the variable with the most unassigned peers,
+	// lowest index on ties, or -1 if every variable is assigned
+	public int selectMinimumSizeMaxDegree ( )
+	{
+		return selectMinimumSizeMaxDegree( null );
+	}
+
+	// The same, but ties go to a uniformly random one unless random is null
+	public int selectMinimumSizeMaxDegree ( SplittableRandom random )
+	{
+		int size = minimumSize();
+		if ( size == -1 )
+			return -1;
+
+		int cell = size * degrees + maximumDegree( size );
+		if ( random == null )
+			return byCell.next( cell, -1 );
+
+		return byCell.select( cell, random.nextInt( byCell.size( cell ) ) );
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	// Moves v after its domain size or assignment changed
+	public void changed ( Variable v, boolean wasAssigned )
+	{
+		int i = v.index();
+		int size = v.isAssigned() ? -1 : v.size();
+		if ( size != sizeOf[i] )
+		{
+			if ( sizeOf[i] != -1 )
+				remove( i );
+
+			if ( size != -1 )
+				insert( i, size );
+		}
+
+		if ( unassignedDegree != null && wasAssigned != v.isAssigned() )
+		{
+			int delta = wasAssigned ? 1 : -1;
+			for ( int peer : network.getPeers( v ) )
+			{
+				if ( sizeOf[ peer ] != -1 )
+				{
+					removeFromCell( peer, sizeOf[ peer ], unassignedDegree[ peer ] );
+					addToCell( peer, sizeOf[ peer ], unassignedDegree[ peer ] + delta );
+				}
+				unassignedDegree[ peer ] += delta;
+			}
+		}
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private void insert ( int i, int size )
+	{
+		// A domain set wholesale may outgrow the initial sizes
+		if ( size >= bySize.sets() )
+			grow( size + 1 );
+
+		sizeOf[i] = size;
+		if ( bySize.size( size ) == 0 )
+			sizeMask[ size >>> 6 ] |= 1L << size;
+
+		bySize.add( size, i );
+		if ( byCell != null )
+			addToCell( i, size, unassignedDegree[i] );
+	}
+
+	private void remove ( int i )
+	{
+		int size = sizeOf[i];
+		bySize.remove( size, i );
+		if ( bySize.size( size ) == 0 )
+			sizeMask[ size >>> 6 ] &= ~( 1L << size );
+
+		if ( byCell != null )
+			removeFromCell( i, size, unassignedDegree[i] );
+
+		sizeOf[i] = -1;
+	}
+
+	private void addToCell ( int i, int size, int degree )
+	{
+		int cell = size * degrees + degree;
+		if ( byCell.size( cell ) == 0 )
+			degreeMask[ size * degreeWords + ( degree >>> 6 ) ] |= 1L << degree;
+
+		byCell.add( cell, i );
+	}
+
+	private void removeFromCell ( int i, int size, int degree )
+	{
+		int cell = size * degrees + degree;
+		byCell.remove( cell, i );
+		if ( byCell.size( cell ) == 0 )
+			degreeMask[ size * degreeWords + ( degree >>> 6 ) ] &= ~( 1L << degree );
+	}
+
+	// Cells are laid out size-major, so more sizes only append cells
+	private void grow ( int sizes )
+	{
+		bySize.grow( sizes );
+		sizeMask = Arrays.copyOf( sizeMask, ( sizes + 63 ) >>> 6 );
+		if ( byCell != null )
+		{
+			byCell.grow( sizes * degrees );
+			degreeMask = Arrays.copyOf( degreeMask, sizes * degreeWords );
+		}
+	}
+
+	// =================================================================
+	// Index Sets
+	// =================================================================
+
+	/**
+	 * A row of bitsets over the variable indices. Each set keeps a summary
+	 * with one bit per non-zero word, so its lowest member takes two
+	 * trailing zero counts for up to 4096 variables.
+	 */
+	private static class IndexSets
+	{
+		private final int words;
+		private final int summaryWords;
+
+		private long[] bits;
+		private long[] summary;
+		private int[] count;
+
+		IndexSets ( int sets, int numVariables )
+		{
+			words        = Math.max( 1, ( numVariables + 63 ) >>> 6 );
+			summaryWords = ( words + 63 ) >>> 6;
+			bits         = new long[ sets * words ];
+			summary      = new long[ sets * summaryWords ];
+			count        = new int[ sets ];
+		}
+
+		int sets ( )
+		{
+			return count.length;
+		}
+
+		int size ( int set )
+		{
+			return count[ set ];
+		}
+
+		void grow ( int sets )
+		{
+			bits    = Arrays.copyOf( bits, sets * words );
+			summary = Arrays.copyOf( summary, sets * summaryWords );
+			count   = Arrays.copyOf( count, sets );
+		}
+
+		void add ( int set, int i )
+		{
+			int w = set * words + ( i >>> 6 );
+			if ( bits[w] == 0 )
+				summary[ set * summaryWords + ( i >>> 12 ) ] |= 1L << ( i >>> 6 );
+
+			bits[w] |= 1L << i;
+			count[ set ]++;
+		}
+
+		void remove ( int set, int i )
+		{
+			int w = set * words + ( i >>> 6 );
+			bits[w] &= ~( 1L << i );
+			if ( bits[w] == 0 )
+				summary[ set * summaryWords + ( i >>> 12 ) ] &= ~( 1L << ( i >>> 6 ) );
+
+			count[ set ]--;
+		}
+
+		// Lowest member above i, the lowest one when i is -1, or -1
+		int next ( int set, int i )
+		{
+			int from = i + 1;
+			int w = from >>> 6;
+			if ( w >= words )
+				return -1;
+
+			long word = bits[ set * words + w ] & ( -1L << from );
+			if ( word != 0 )
+				return ( w << 6 ) + Long.numberOfTrailingZeros( word );
+
+			// Skip to the next non-zero word through the summary
+			int after = w + 1;
+			for ( int s = after >>> 6; s < summaryWords; ++s )
+			{
+				long mask = summary[ set * summaryWords + s ];
+				if ( s == after >>> 6 )
+					mask &= -1L << after;
+
+				if ( mask != 0 )
+				{
+					int found = ( s << 6 ) + Long.numberOfTrailingZeros( mask );
+					return ( found << 6 ) + Long.numberOfTrailingZeros( bits[ set * words + found ] );
+				}
+			}
+			return -1;
+		}
+
+		// Member of rank r in index order, r below size( set )
+		int select ( int set, int r )
+		{
+			for ( int s = 0; s < summaryWords; ++s )
+			{
+				for ( long mask = summary[ set * summaryWords + s ]; mask != 0; mask &= mask - 1 )
+				{
+					int w = ( s << 6 ) + Long.numberOfTrailingZeros( mask );
+					long word = bits[ set * words + w ];
+					int c = Long.bitCount( word );
+					if ( r < c )
+					{
+						for ( ; r > 0; --r )
+							word &= word - 1;
+
+						return ( w << 6 ) + Long.numberOfTrailingZeros( word );
+					}
+					r -= c;
+				}
+			}
+			return -1;
+		}
+	}
+}
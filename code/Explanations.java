@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+/**
+ * Why each variable has its current domain, for conflict directed
+ * backjumping on top of forward checking.
+ *
+ * Forward checking removes a value from a variable because a peer was
+ * assigned it, so the explanation of a removal is that peer. A variable is
+ * either assigned by the decision at some level, or forced by propagation
+ * once one value is left, and the decisions behind a forced variable are
+ * those behind all of its removed values. Following these links back from
+ * a conflict gives the set of decision levels responsible for it.
+ *
+ * Nothing is undone on backtracking: records are only read for values that
+ * are currently removed and variables that are currently assigned, and
+ * those were written on the current branch or before the search.
+ */
+
+public class Explanations
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// Level of a variable assigned by propagation rather than a decision
+	public static final int FORCED = -1;
+
+	private ConstraintNetwork network;
+	private int valuesPerVariable;
+
+	// Index of the variable whose assignment removed value from variable
+	// v, at v * valuesPerVariable + value, or -1 if no such variable
+	private int[] removedBy;
+
+	// Decision level that assigned each variable, 0 for anything assigned
+	// before the search, or FORCED
+	private int[] level;
+
+	// The variables of the last conflict, b is -1 if a was wiped out
+	private int conflictA = -1;
+	private int conflictB = -1;
+
+	// Visited stamps and work stack for walking the explanations
+	private int[] stamp;
+	private int epoch = 0;
+	private int[] stack;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public Explanations ( ConstraintNetwork network, int maxValue )
+	{
+		int numVariables = network.getVariables().size();
+		this.network           = network;
+		this.valuesPerVariable = maxValue + 1;
+		this.removedBy         = new int[ numVariables * valuesPerVariable ];
+		this.level             = new int[ numVariables ];
+		this.stamp             = new int[ numVariables ];
+		this.stack             = new int[ numVariables ];
+		Arrays.fill( removedBy, -1 );
+	}
+
+	// Words of a level set that can hold every level up to maxLevel
+	public static int wordsFor ( int maxLevel )
+	{
+		return ( maxLevel >>> 6 ) + 1;
+	}
+
+	// =================================================================
+	// Recording
+	// =================================================================
+
+	// value left v because cause was assigned it
+	public void removed ( Variable v, int value, Variable cause )
+	{
+		removedBy[ v.index() * valuesPerVariable + value ] = cause.index();
+	}
+
+	// v was assigned by propagation, its last value left
+	public void forced ( Variable v )
+	{
+		level[ v.index() ] = FORCED;
+	}
+
+	// v was assigned by the decision at the given level, 0 before the search
+	public void decided ( Variable v, int decisionLevel )
+	{
+		level[ v.index() ] = decisionLevel;
+	}
+
+	// Two assigned peers took the same value, or b is null and a has no
+	// values left
+	public void conflict ( Variable a, Variable b )
+	{
+		conflictA = a.index();
+		conflictB = b != null ? b.index() : -1;
+	}
+
+	// =================================================================
+	// Explaining
+	// =================================================================
+
+	// Adds the levels of the decisions behind the last conflict to levels
+	public void explainConflict ( long[] levels )
+	{
+		epoch++;
+		int top = 0;
+		if ( conflictB == -1 )
+		{
+			stamp[ conflictA ] = epoch;
+			top = pushRemovals( conflictA, top );
+		}
+		else
+		{
+			top = visit( conflictA, top );
+			top = visit( conflictB, top );
+		}
+		walk( top, levels );
+	}
+
+	// Adds the levels of the decisions behind v's assignment to levels
+	public void explain ( Variable v, long[] levels )
+	{
+		epoch++;
+		walk( visit( v.index(), 0 ), levels );
+	}
+
+	// Adds the levels of the decisions behind the values missing from v's
+	// domain to levels, e.g. when v is picked for the next decision
+	public void explainRemovals ( Variable v, long[] levels )
+	{
+		epoch++;
+		stamp[ v.index() ] = epoch;
+		walk( pushRemovals( v.index(), 0 ), levels );
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private void walk ( int top, long[] levels )
+	{
+		while ( top > 0 )
+		{
+			int x = stack[ --top ];
+			int l = level[x];
+			if ( l > 0 )
+				levels[ l >>> 6 ] |= 1L << l;
+			else if ( l == FORCED )
+				top = pushRemovals( x, top );
+		}
+	}
+
+	// Pushes the causes of every value missing from x's domain
+	private int pushRemovals ( int x, int top )
+	{
+		Domain domain = network.getVariable( x ).getDomain();
+		for ( int value = 1, k = x * valuesPerVariable + 1; value < valuesPerVariable; ++value, ++k )
+			if ( removedBy[k] != -1 && ! domain.contains( value ) )
+				top = visit( removedBy[k], top );
+
+		return top;
+	}
+
+	private int visit ( int x, int top )
+	{
+		if ( stamp[x] != epoch )
+		{
+			stamp[x] = epoch;
+			stack[ top++ ] = x;
+		}
+		return top;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Backtracking engine over a FlatState instead of the object model, for
+ * large boards where chasing Variable and Domain references dominates.
+ *
+ * It always searches with MRV and forward checking plus naked singles;
+ * the heuristic and consistency options only apply to BTSolver. Choice
+ * points are three int arrays, and backtracking rewinds the state's undo
+ * log to the mark taken before the choice.
+ */
+
+public class FlatSolver implements SudokuSolver
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private FlatState state;
+	private boolean consistent;
+	private boolean hasSolution = false;
+	private SolverStatistics statistics = new SolverStatistics();
+
+	// Cell, last value tried and undo mark of each choice point
+	private int[] choiceCell;
+	private int[] choiceValue;
+	private int[] choiceMark;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public FlatSolver ( SudokuBoard sboard )
+	{
+		this( new FlatState( sboard ) );
+	}
+
+	public FlatSolver ( FlatState state )
+	{
+		this.state = state;
+
+		int numCells = state.getNumCells();
+		choiceCell  = new int[ numCells ];
+		choiceValue = new int[ numCells ];
+		choiceMark  = new int[ numCells ];
+
+		// Propagate the givens before the first decision
+		consistent = state.propagateAll();
+	}
+
+	// =================================================================
+	// Engine Functions
+	// =================================================================
+
+	public SolveStatus solve ( SolveLimits limits )
+	{
+		if ( hasSolution )
+			return SolveStatus.SOLVED;
+
+		long startTime = System.nanoTime();
+		long startPushes = state.getPushCount();
+		SolveStatus status = consistent ? search( limits ) : SolveStatus.UNSATISFIABLE;
+		statistics.addTrailPushes( state.getPushCount() - startPushes );
+		statistics.addSolveTime( System.nanoTime() - startTime );
+		return status;
+	}
+
+	private SolveStatus search ( SolveLimits limits )
+	{
+		int cell = selectCell();
+		if ( cell == -1 )
+		{
+			hasSolution = true;
+			return SolveStatus.SOLVED;
+		}
+
+		int depth = 0;
+		openChoice( depth, cell );
+		long startNodes = statistics.getNodes();
+		long steps = 0;
+
+		while ( depth >= 0 )
+		{
+			SolveStatus stop = limits.check( statistics.getNodes() - startNodes, ++steps );
+			if ( stop != null )
+				return stop;
+
+			// The domain is back to what it was when the choice was opened
+			int c = choiceCell[ depth ];
+			int v = state.next( c, choiceValue[ depth ] );
+			if ( v == -1 )
+			{
+				if ( --depth >= 0 )
+				{
+					state.undoTo( choiceMark[ depth ] );
+					statistics.addBacktrack();
+				}
+				continue;
+			}
+
+			choiceValue[ depth ] = v;
+			statistics.addNode();
+			state.assign( c, v );
+
+			if ( state.propagate( c ) )
+			{
+				int next = selectCell();
+				if ( next == -1 )
+				{
+					hasSolution = true;
+					return SolveStatus.SOLVED;
+				}
+
+				openChoice( ++depth, next );
+				continue;
+			}
+
+			state.undoTo( choiceMark[ depth ] );
+			statistics.addBacktrack();
+		}
+		return SolveStatus.UNSATISFIABLE;
+	}
+
+	public boolean hasSolution ( )
+	{
+		return hasSolution;
+	}
+
+	public SudokuBoard getSolution ( )
+	{
+		return state.toSudokuBoard();
+	}
+
+	public SolverStatistics getStatistics ( )
+	{
+		return new SolverStatistics( statistics );
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private void openChoice ( int depth, int cell )
+	{
+		choiceCell[ depth ]  = cell;
+		choiceValue[ depth ] = 0;
+		choiceMark[ depth ]  = state.mark();
+	}
+
+	// Unassigned cell with the fewest values, lowest id on ties, or -1
+	private int selectCell ( )
+	{
+		int best = -1;
+		int bestSize = Integer.MAX_VALUE;
+		for ( int c = 0, n = state.getNumCells(); c < n; ++c )
+		{
+			if ( state.value( c ) != 0 )
+				continue;
+
+			int size = state.size( c );
+			if ( size < bestSize )
+			{
+				best = c;
+				bestSize = size;
+
+				// Singletons are assigned by propagation, so two is the floor
+				if ( size <= 2 )
+					break;
+			}
+		}
+		return best;
+	}
+}
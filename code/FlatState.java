@@ -0,0 +1,310 @@
+/**
+ * Search state of a p x q board packed into flat primitive arrays indexed
+ * by cell id (row * N + col), as an alternative to the Variable and Domain
+ * objects of ConstraintNetwork.
+ *
+ * Domains are bitmasks of W longs per cell (bit v set means v is possible),
+ * so for N up to 63 a cell's domain is a single long. Peers live in one int
+ * array with a fixed stride. Every change is logged as one int so that
+ * undoTo() can restore any earlier mark without copying domains.
+ */
+
+public class FlatState
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private int p;
+	private int q;
+	private int N;
+	private int numCells;
+
+	// Longs per domain, and the domain of cell c in words [c*W, c*W + W)
+	private int W;
+	private long[] domains;
+	private int[] sizes;
+
+	// Assigned value of each cell, 0 while unassigned
+	private int[] values;
+
+	// The peers of cell c are peers[c*numPeers .. c*numPeers + numPeers)
+	private int numPeers;
+	private int[] peers;
+
+	// Undo log: cell*(N+1) + v for a removed value v, cell*(N+1) for an
+	// assignment. Each cell logs at most N + 1 live entries, so it never grows.
+	private int[] log;
+	private int logSize = 0;
+	private long pushes = 0;
+
+	// Propagation queue of newly assigned cells
+	private int[] queue;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	// Full domains for empty cells, the given value for the rest
+	public FlatState ( SudokuBoard board )
+	{
+		this( board.getP(), board.getQ() );
+
+		int[][] grid = board.getBoard();
+		for ( int c = 0; c < numCells; ++c )
+		{
+			int given = grid[ c / N ][ c % N ];
+			for ( int v = 1; v <= N; ++v )
+				if ( given == 0 || given == v )
+					addValue( c, v );
+
+			if ( given != 0 )
+				values[c] = given;
+		}
+	}
+
+	// The current domains and assignments of a network built from a board
+	public FlatState ( ConstraintNetwork network, int p, int q )
+	{
+		this( p, q );
+
+		for ( Variable var : network.getVariables() )
+		{
+			int c = var.row() * N + var.col();
+			Domain d = var.getDomain();
+			for ( int v = d.first(); v != -1; v = d.next( v ) )
+				addValue( c, v );
+
+			if ( var.isAssigned() )
+				values[c] = var.getAssignment();
+		}
+	}
+
+	private FlatState ( int p, int q )
+	{
+		this.p = p;
+		this.q = q;
+		this.N = p*q;
+		this.numCells = N*N;
+		this.W = ( N >>> 6 ) + 1;
+
+		domains = new long[ numCells * W ];
+		sizes   = new int[ numCells ];
+		values  = new int[ numCells ];
+		log     = new int[ numCells * ( N + 1 ) ];
+		queue   = new int[ numCells ];
+
+		buildPeers();
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public int getN ( )
+	{
+		return N;
+	}
+
+	public int getNumCells ( )
+	{
+		return numCells;
+	}
+
+	public int size ( int cell )
+	{
+		return sizes[ cell ];
+	}
+
+	// The value assigned to cell, or 0
+	public int value ( int cell )
+	{
+		return values[ cell ];
+	}
+
+	public boolean contains ( int cell, int v )
+	{
+		return ( domains[ cell*W + ( v >>> 6 ) ] & ( 1L << v ) ) != 0;
+	}
+
+	// Smallest value in the domain of cell greater than v, or -1
+	public int next ( int cell, int v )
+	{
+		int from = v + 1;
+		int w = from >>> 6;
+		if ( w >= W )
+			return -1;
+
+		long word = domains[ cell*W + w ] & ( -1L << from );
+		while ( true )
+		{
+			if ( word != 0 )
+				return ( w << 6 ) + Long.numberOfTrailingZeros( word );
+
+			if ( ++w == W )
+				return -1;
+
+			word = domains[ cell*W + w ];
+		}
+	}
+
+	// Number of changes logged since construction
+	public long getPushCount ( )
+	{
+		return pushes;
+	}
+
+	public SudokuBoard toSudokuBoard ( )
+	{
+		int[][] board = new int[N][N];
+		for ( int c = 0; c < numCells; ++c )
+			board[ c / N ][ c % N ] = values[c];
+
+		return new SudokuBoard( p, q, board );
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	// Position in the undo log to later return to with undoTo
+	public int mark ( )
+	{
+		return logSize;
+	}
+
+	// Reverts every change logged after mark, newest first
+	public void undoTo ( int mark )
+	{
+		while ( logSize > mark )
+		{
+			int entry = log[ --logSize ];
+			int cell = entry / ( N + 1 );
+			int v = entry % ( N + 1 );
+
+			if ( v == 0 )
+				values[ cell ] = 0;
+			else
+				addValue( cell, v );
+		}
+	}
+
+	// Removes v from the domain of cell, returns false if it was not there
+	public boolean remove ( int cell, int v )
+	{
+		int w = cell*W + ( v >>> 6 );
+		long bit = 1L << v;
+		if ( ( domains[w] & bit ) == 0 )
+			return false;
+
+		domains[w] &= ~bit;
+		sizes[ cell ]--;
+		push( cell * ( N + 1 ) + v );
+		return true;
+	}
+
+	// Reduces the domain of cell to v and assigns it
+	public void assign ( int cell, int v )
+	{
+		for ( int u = next( cell, 0 ); u != -1; u = next( cell, u ) )
+			if ( u != v )
+				remove( cell, u );
+
+		values[ cell ] = v;
+		push( cell * ( N + 1 ) );
+	}
+
+	/**
+	 * Forward checks from an assigned cell: its value leaves every peer,
+	 * peers left with one value are assigned and checked in turn. Returns
+	 * false as soon as a domain is wiped out.
+	 */
+	public boolean propagate ( int cell )
+	{
+		int head = 0, tail = 0;
+		queue[ tail++ ] = cell;
+
+		while ( head < tail )
+		{
+			int c = queue[ head++ ];
+			int v = values[c];
+			for ( int k = c * numPeers, end = k + numPeers; k < end; ++k )
+			{
+				int peer = peers[k];
+				if ( ! remove( peer, v ) )
+					continue;
+
+				if ( sizes[ peer ] == 0 )
+					return false;
+
+				if ( sizes[ peer ] == 1 && values[ peer ] == 0 )
+				{
+					values[ peer ] = next( peer, 0 );
+					push( peer * ( N + 1 ) );
+					queue[ tail++ ] = peer;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Propagates every assigned cell, e.g. the givens before the search
+	public boolean propagateAll ( )
+	{
+		for ( int c = 0; c < numCells; ++c )
+			if ( values[c] != 0 && ! propagate( c ) )
+				return false;
+
+		return true;
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private void addValue ( int cell, int v )
+	{
+		int w = cell*W + ( v >>> 6 );
+		long bit = 1L << v;
+		if ( ( domains[w] & bit ) == 0 )
+		{
+			domains[w] |= bit;
+			sizes[ cell ]++;
+		}
+	}
+
+	private void push ( int entry )
+	{
+		log[ logSize++ ] = entry;
+		pushes++;
+	}
+
+	// Row, column and block peers of every cell, each listed once
+	private void buildPeers ( )
+	{
+		numPeers = 2 * ( N - 1 ) + ( p - 1 ) * ( q - 1 );
+		peers = new int[ numCells * numPeers ];
+
+		for ( int c = 0; c < numCells; ++c )
+		{
+			int row = c / N, col = c % N;
+			int k = c * numPeers;
+
+			for ( int j = 0; j < N; ++j )
+				if ( j != col )
+					peers[ k++ ] = row * N + j;
+
+			for ( int i = 0; i < N; ++i )
+				if ( i != row )
+					peers[ k++ ] = i * N + col;
+
+			// Block cells outside this row and column
+			int top = row / p * p, left = col / q * q;
+			for ( int i = top; i < top + p; ++i )
+				for ( int j = left; j < left + q; ++j )
+					if ( i != row && j != col )
+						peers[ k++ ] = i * N + j;
+		}
+	}
+}
@@ -2,6 +2,8 @@ import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import javax.management.JMException;
 
 /**
  * Main driver file, which is responsible for interfacing with the
@@ -10,6 +12,15 @@ import java.io.IOException;
 
 public class Main
 {
+	// The old budget of 600 seconds, less the 60 second floor it kept
+	private static final long DEFAULT_TIMEOUT_MILLIS = 540000;
+
+	// Boards read from a bulk file and solved together before writing
+	private static final int BULK_CHUNK_SIZE = 4096;
+
+	// JMX name the search metrics are published under
+	private static final String METRICS_NAME = "SudokuSolver:type=SearchMetrics";
+
 	public static void main ( String[] args )
 	{
 		// Important Variables
@@ -17,6 +28,28 @@ public class Main
 		String var_sh = "";
 		String val_sh = "";
 		String cc     = "";
+		String engine = "";
+		int threads   = 1;
+
+		// Wall clock limit per board, and an optional budget of nodes
+		long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+		long nodeBudget    = 0;
+
+		// When set, count solutions of a single board up to this many
+		int countLimit     = 0;
+
+		// Treat the file as a bulk file, optionally writing results to out
+		boolean bulk       = false;
+		String out         = "";
+
+		// Print search metrics of the BTSolver runs, also published over JMX
+		SearchMetrics metrics = null;
+
+		// Restart BTSolver runs on this schedule, optionally from scratch,
+		// breaking ties with a generator seeded by restartSeed
+		RestartPolicy restarts = null;
+		boolean freshRestarts  = false;
+		long restartSeed       = RestartPolicy.DEFAULT_SEED;
 
 		for ( int i = 0; i < args.length; ++i )
 		{
@@ -37,6 +70,12 @@ public class Main
 			else if ( token.equals( "NOR" ) )
 				cc = "norvigCheck";
 
+			else if ( token.equals( "SUB" ) )
+				cc = "subsetsCheck";
+
+			else if ( token.equals( "CBJ" ) )
+				cc = "conflictBackjumping";
+
 			else if ( token.equals( "TOURN" ) )
 			{
 				 var_sh = "tournVar";
@@ -44,10 +83,64 @@ public class Main
 				 cc     = "tournCC";
 			}
 
+			else if ( token.equals( "DLX" ) )
+				engine = "dancingLinks";
+
+			else if ( token.equals( "FLAT" ) )
+				engine = "flat";
+
+			else if ( token.equals( "PORT" ) )
+				engine = "portfolio";
+
+			else if ( token.equals( "PAR" ) )
+				engine = "parallel";
+
+			else if ( token.startsWith( "THREADS=" ) )
+				threads = Integer.parseInt( token.substring( "THREADS=".length() ) );
+
+			else if ( token.startsWith( "TIMEOUT=" ) )
+				timeoutMillis = (long) ( Double.parseDouble( token.substring( "TIMEOUT=".length() ) ) * 1000 );
+
+			else if ( token.startsWith( "COUNT=" ) )
+				countLimit = Integer.parseInt( token.substring( "COUNT=".length() ) );
+
+			else if ( token.equals( "METRICS" ) )
+				metrics = new SearchMetrics();
+
+			else if ( token.equals( "BULK" ) )
+				bulk = true;
+
+			else if ( token.startsWith( "OUT=" ) )
+				out = token.substring( "OUT=".length() );
+
+			else if ( token.startsWith( "NODES=" ) )
+				nodeBudget = Long.parseLong( token.substring( "NODES=".length() ) );
+
+			else if ( token.equals( "RESTART=LUBY" ) )
+				restarts = RestartPolicy.luby( RestartPolicy.DEFAULT_LUBY_UNIT );
+
+			else if ( token.equals( "RESTART=GEO" ) )
+				restarts = RestartPolicy.geometric( RestartPolicy.DEFAULT_GEOMETRIC_FIRST, RestartPolicy.DEFAULT_GEOMETRIC_FACTOR );
+
+			else if ( token.equals( "FRESH" ) )
+				freshRestarts = true;
+
+			else if ( token.startsWith( "SEED=" ) )
+				restartSeed = Long.parseLong( token.substring( "SEED=".length() ) );
+
 			else
 				file = token;
 		}
 
+		if ( restarts != null && freshRestarts )
+			restarts = restarts.keepingWeights( false );
+
+		if ( restarts != null )
+			restarts = restarts.withSeed( restartSeed );
+
+		if ( metrics != null )
+			registerMetrics( metrics );
+
 		Trail trail = new Trail();
 
 		if ( file == "" )
@@ -55,26 +148,23 @@ public class Main
 			SudokuBoard board = new SudokuBoard( 3, 3, 7 );
 			System.out.println( board.toString() );
 
-			BTSolver solver = new BTSolver( board, trail, val_sh, var_sh, cc );
-			if(cc.equals("norvigCheck") || cc.equals("forwardChecking") || cc.equals("tournCC")){
-				solver.checkConsistency();
-			}
+			SudokuSolver solver = SolverFactory.create( board, trail, engine, val_sh, var_sh, cc );
 
 			long startTime = System.nanoTime();
-			solver.solve(600.0f);
+			SolveStatus status = solver.solve( SolveLimits.withTimeout( timeoutMillis, nodeBudget, null ) );
 			long endTime = System.nanoTime();
 			float elapsedMiliSecs = ((float)(endTime - startTime)) / 1000000;
 
 			if ( solver.hasSolution() )
 			{
 				System.out.println( solver.getSolution().toString() );
-				System.out.println( "Trail Pushes: " + trail.getPushCount() );
-				System.out.println( "Backtracks: " + trail.getUndoCount() );
+				System.out.println( "Trail Pushes: " + solver.getStatistics().getTrailPushes() );
+				System.out.println( "Backtracks: " + solver.getStatistics().getBacktracks() );
 				System.out.println( "Time Taken: " + elapsedMiliSecs );
 			}
 			else
 			{
-				System.out.println( "Failed to find a solution" );
+				System.out.println( describeFailure( status ) );
 			}
 
 			return;
@@ -84,6 +174,12 @@ public class Main
 		File location = new File ( file );
 		Boolean folder = location.isDirectory();
 
+		if ( bulk )
+		{
+			solveBulk( location, out, engine, val_sh, var_sh, cc, threads, timeoutMillis, nodeBudget, metrics, restarts );
+			return;
+		}
+
 		if ( folder )
 		{
 			File[] listOfBoards = location.listFiles();
@@ -94,68 +190,171 @@ public class Main
 				return;
 			}
 
-			int numSolutions = 0;
-			float totalTimeTaken = 0;
-			StringBuilder times = new StringBuilder();
-			for ( int i = 0; i < listOfBoards.length; ++i )
-			{
-				//System.out.println ( "Running board: " + listOfBoards[i] );
-
-				SudokuBoard board = new SudokuBoard( listOfBoards[i] );
-
-				BTSolver solver = new BTSolver( board, trail, val_sh, var_sh, cc );
-				if(cc.equals("norvigCheck") || cc.equals("forwardChecking") || cc.equals("tournCC")){
-					solver.checkConsistency();
-				}
-				long startTime = System.nanoTime();
-				solver.solve(600.0f);
-				long endTime = System.nanoTime();
-				float elapsedMiliSecs = ((float)(endTime - startTime)) / 1000000;
-
-				if ( solver.hasSolution() ) {
-					totalTimeTaken += elapsedMiliSecs;
-					times.append(elapsedMiliSecs);
-					times.append(",");
-					numSolutions++;
-				}
-
-				trail.clear();
-			}
-
-			if (numSolutions>0) {
-				times.deleteCharAt(times.length()-1);
-			}
+			// Each worker thread gets its own trail and solvers
+			BatchSolver batch = new BatchSolver( engine, val_sh, var_sh, cc, threads, timeoutMillis, nodeBudget );
+			batch.setSearchMetrics( metrics );
+			batch.setRestarts( restarts );
+			batch.solve( listOfBoards );
 
+			int numSolutions = batch.getNumSolutions();
 			System.out.println( "Solutions Found: " + numSolutions );
-			System.out.println( "Trail Pushes: " + trail.getPushCount() );
-			System.out.println( "Backtracks: "  + trail.getUndoCount() );
-			System.out.println( "Average Time Taken (msecs): " + totalTimeTaken/numSolutions);
-			System.out.println( "Time Values (msecs): " + times.toString());
+			System.out.println( "Trail Pushes: " + batch.getStatistics().getTrailPushes() );
+			System.out.println( "Backtracks: "  + batch.getStatistics().getBacktracks() );
+			System.out.println( "Timed Out: " + batch.getNumWithStatus( SolveStatus.TIMED_OUT ) );
+			System.out.println( "Node Limit Reached: " + batch.getNumWithStatus( SolveStatus.NODE_LIMIT ) );
+			System.out.println( "Average Time Taken (msecs): " + batch.getTotalTimeTaken()/numSolutions);
+			System.out.println( "Time Values (msecs): " + batch.getTimeValues());
+			System.out.println( "Throughput (boards/sec): " + batch.getThroughput());
+			printMetrics( metrics );
 			return;
 		}
 
 		SudokuBoard board = new SudokuBoard( location );
 		System.out.println( board.toString() );
 
-		BTSolver solver = new BTSolver( board, trail, val_sh, var_sh, cc );
-		if(cc.equals("norvigCheck") || cc.equals("forwardChecking") || cc.equals("tournCC")){
-			solver.checkConsistency();
+		if ( countLimit > 0 )
+		{
+			BTSolver counter = (BTSolver) SolverFactory.create( board, trail, "", val_sh, var_sh, cc );
+			SolveStatus status = counter.countSolutions( countLimit, SolveLimits.withTimeout( timeoutMillis, nodeBudget, null ) );
+			SolverStatistics stats = counter.getStatistics();
+
+			if ( status == SolveStatus.SOLVED || status == SolveStatus.UNSATISFIABLE )
+				System.out.println( "Solutions Counted: " + counter.getSolutionCount()
+						+ ( counter.getSolutionCount() >= countLimit ? " (limit reached)" : "" ) );
+			else
+				System.out.println( describeFailure( status ) + ", counted " + counter.getSolutionCount() + " so far" );
+
+			System.out.println( "Nodes: " + stats.getNodes() );
+			System.out.println( "Backtracks: " + stats.getBacktracks() );
+			System.out.println( "Time Taken (msecs): " + stats.getSolveTimeNanos() / 1000000.0 );
+			return;
 		}
+
+		SudokuSolver solver = SolverFactory.create( board, trail, engine, val_sh, var_sh, cc );
+		if ( metrics != null && solver instanceof BTSolver )
+			( (BTSolver) solver ).setSearchListener( new SearchMetrics( metrics ) );
+
+		if ( restarts != null && solver instanceof BTSolver )
+			( (BTSolver) solver ).setRestarts( restarts );
+
 		long startTime = System.nanoTime();
-		solver.solve(600.0f);
+		SolveStatus status = solver.solve( SolveLimits.withTimeout( timeoutMillis, nodeBudget, null ) );
 		long endTime = System.nanoTime();
 		float elapsedMiliSecs = ((float)(endTime - startTime)) / 1000000;
 
 		if ( solver.hasSolution() )
 		{
 			System.out.println( solver.getSolution().toString() );
-			System.out.println( "Trail Pushes: " + trail.getPushCount() );
-			System.out.println( "Backtracks: " + trail.getUndoCount() );
+			System.out.println( "Trail Pushes: " + solver.getStatistics().getTrailPushes() );
+			System.out.println( "Backtracks: " + solver.getStatistics().getBacktracks() );
 			System.out.println( "Time Taken (msecs): " + elapsedMiliSecs);
 		}
 		else
 		{
-			System.out.println( "Failed to find a solution" );
+			System.out.println( describeFailure( status ) );
+		}
+		printMetrics( metrics );
+	}
+
+	// Publishes the metrics as an MXBean, so a long run can be watched
+	// with e.g. jconsole while it solves
+	private static void registerMetrics ( SearchMetrics metrics )
+	{
+		try
+		{
+			metrics.register( METRICS_NAME );
+		}
+		catch ( JMException e )
+		{
+			System.out.println( "[ERROR] Could not publish search metrics: " + e.getMessage() );
+		}
+	}
+
+	private static void printMetrics ( SearchMetrics metrics )
+	{
+		if ( metrics != null )
+			System.out.println( metrics );
+	}
+
+	/**
+	 * Streams a bulk file through a BatchSolver a chunk at a time, writing
+	 * one line per board to out in input order: the solution if one was
+	 * found, otherwise the unsolved puzzle as read.
+	 */
+	private static void solveBulk ( File location, String out, String engine, String val_sh, String var_sh,
+	                                String cc, int threads, long timeoutMillis, long nodeBudget, SearchMetrics metrics,
+	                                RestartPolicy restarts )
+	{
+		BatchSolver batch = new BatchSolver( engine, val_sh, var_sh, cc, threads, timeoutMillis, nodeBudget );
+		batch.setSearchMetrics( metrics );
+		batch.setRestarts( restarts );
+		SolverStatistics statistics = new SolverStatistics();
+		int numBoards = 0, numSolutions = 0, numTimedOut = 0, numNodeLimit = 0;
+		float totalTimeTaken = 0;
+		long startTime = System.nanoTime();
+
+		try ( BulkPuzzleReader reader = new BulkPuzzleReader( location );
+		      BulkPuzzleWriter writer = out.isEmpty() ? null : new BulkPuzzleWriter( new File( out ), reader.getP(), reader.getQ() ) )
+		{
+			SudokuBoard[] chunk = new SudokuBoard[ BULK_CHUNK_SIZE ];
+			int size;
+			do
+			{
+				size = 0;
+				for ( SudokuBoard b = reader.next(); b != null; b = size < chunk.length ? reader.next() : null )
+					chunk[ size++ ] = b;
+
+				if ( size == 0 )
+					break;
+
+				SudokuBoard[] boards = size == chunk.length ? chunk : Arrays.copyOf( chunk, size );
+				batch.solve( boards );
+
+				for ( int i = 0; i < size && writer != null; ++i )
+					writer.write( batch.getSolution( i ) != null ? batch.getSolution( i ) : boards[i] );
+
+				numBoards      += size;
+				numSolutions   += batch.getNumSolutions();
+				numTimedOut    += batch.getNumWithStatus( SolveStatus.TIMED_OUT );
+				numNodeLimit   += batch.getNumWithStatus( SolveStatus.NODE_LIMIT );
+				totalTimeTaken += batch.getTotalTimeTaken();
+				statistics.add( batch.getStatistics() );
+			}
+			while ( size == chunk.length );
+		}
+		catch ( IOException e )
+		{
+			System.out.println( "[ERROR] " + e.getMessage() );
+			return;
+		}
+
+		double seconds = ( System.nanoTime() - startTime ) / 1000000000.0;
+		System.out.println( "Boards Read: " + numBoards );
+		System.out.println( "Solutions Found: " + numSolutions );
+		System.out.println( "Trail Pushes: " + statistics.getTrailPushes() );
+		System.out.println( "Backtracks: "  + statistics.getBacktracks() );
+		System.out.println( "Timed Out: " + numTimedOut );
+		System.out.println( "Node Limit Reached: " + numNodeLimit );
+		System.out.println( "Average Time Taken (msecs): " + totalTimeTaken/numSolutions );
+		System.out.println( "Throughput (boards/sec): " + numBoards / seconds );
+		printMetrics( metrics );
+	}
+
+	private static String describeFailure ( SolveStatus status )
+	{
+		switch ( status )
+		{
+			case TIMED_OUT:
+				return "Timed out before finding a solution";
+
+			case NODE_LIMIT:
+				return "Node budget exhausted before finding a solution";
+
+			case CANCELLED:
+				return "Solve was cancelled";
+
+			default:
+				return "Failed to find a solution";
 		}
 	}
 }
@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+/**
+ * A bounded store of nogoods: sets of assignments, var = value, that were
+ * found not to extend to a solution.
+ *
+ * Nogoods live in a ring of fixed capacity, so the oldest one is evicted
+ * once the ring is full and the store never grows. Each nogood is indexed
+ * by one of its assignments, its watch, in int linked lists, and is only
+ * checked when that assignment is made. That
+ * misses some violations but keeps the check to a few nogoods per node.
+ */
+
+public class NogoodStore
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private int capacity;
+	private int maxLength;
+	private int valuesPerVariable;
+
+	// Assignments of the nogood in slot s are at s*maxLength and on
+	private int[] variables;
+	private int[] values;
+	private int[] lengths;
+
+	// Watch key ( variable * valuesPerVariable + value ) of each slot, -1 if
+	// empty, and the slots sharing a key linked from head
+	private int[] watch;
+	private int[] head;
+	private int[] next;
+	private int[] prev;
+
+	// Slot the next nogood goes into, evicting whatever is there
+	private int cursor = 0;
+	private int size = 0;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	// Room for capacity nogoods of up to maxLength assignments each, over
+	// numVariables variables with values up to maxValue
+	public NogoodStore ( int capacity, int maxLength, int numVariables, int maxValue )
+	{
+		this.capacity          = capacity;
+		this.maxLength         = maxLength;
+		this.valuesPerVariable = maxValue + 1;
+
+		variables = new int[ capacity * maxLength ];
+		values    = new int[ capacity * maxLength ];
+		lengths   = new int[ capacity ];
+		watch     = new int[ capacity ];
+		next      = new int[ capacity ];
+		prev      = new int[ capacity ];
+		head      = new int[ numVariables * valuesPerVariable ];
+		Arrays.fill( watch, -1 );
+		Arrays.fill( head, -1 );
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public int size ( )
+	{
+		return size;
+	}
+
+	public int getMaxLength ( )
+	{
+		return maxLength;
+	}
+
+	public int length ( int slot )
+	{
+		return lengths[ slot ];
+	}
+
+	// Variable index of the i-th assignment of the nogood in slot
+	public int variable ( int slot, int i )
+	{
+		return variables[ slot * maxLength + i ];
+	}
+
+	/**
+	 * Returns the slot of a nogood watched by variable = value whose
+	 * assignments all hold in network, or -1 if there is none. Meant to be
+	 * called right after variable is assigned value.
+	 */
+	public int findViolated ( int variable, int value, ConstraintNetwork network )
+	{
+		for ( int s = head[ variable * valuesPerVariable + value ]; s != -1; s = next[s] )
+		{
+			boolean holds = true;
+			for ( int i = s * maxLength, end = i + lengths[s]; i < end && holds; ++i )
+			{
+				Variable v = network.getVariable( variables[i] );
+				holds = v.isAssigned() && v.getAssignment() == values[i];
+			}
+
+			if ( holds )
+				return s;
+		}
+		return -1;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	/**
+	 * Stores the nogood made of the first length assignments vars[i] =
+	 * vals[i], watched by the one at index watchAt. Returns false, storing
+	 * nothing, if it has more than maxLength assignments.
+	 */
+	public boolean add ( int[] vars, int[] vals, int length, int watchAt )
+	{
+		if ( length > maxLength )
+			return false;
+
+		int s = cursor;
+		cursor = ( cursor + 1 ) % capacity;
+		if ( watch[s] != -1 )
+			unlink( s );
+		else
+			size++;
+
+		System.arraycopy( vars, 0, variables, s * maxLength, length );
+		System.arraycopy( vals, 0, values, s * maxLength, length );
+		lengths[s] = length;
+
+		int key = vars[ watchAt ] * valuesPerVariable + vals[ watchAt ];
+		watch[s] = key;
+		prev[s] = -1;
+		next[s] = head[ key ];
+		if ( head[ key ] != -1 )
+			prev[ head[ key ] ] = s;
+
+		head[ key ] = s;
+		return true;
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private void unlink ( int s )
+	{
+		if ( prev[s] != -1 )
+			next[ prev[s] ] = next[s];
+		else
+			head[ watch[s] ] = next[s];
+
+		if ( next[s] != -1 )
+			prev[ next[s] ] = prev[s];
+
+		watch[s] = -1;
+	}
+}
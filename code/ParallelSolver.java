@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Searches a single board on several cores by splitting the top of the
+ * BTSolver search tree into subtrees that a work stealing pool runs.
+ *
+ * A subtree is the propagated state of its parent, saved with
+ * saveDomains(), and the decision that branches into it. The task for a
+ * subtree builds its own BTSolver and Trail for the board, restores the
+ * state and takes the decision, so no network state is ever shared and
+ * no path is replayed. Near the root a task picks the next variable and
+ * value order the same way BTSolver does and forks one task per value,
+ * the children sharing one saved state. Deeper down, once the
+ * subtree is its share of the work, the task searches it with solve().
+ * The first solution found cancels every other task.
+ *
+ * The deadline, the cancellation token and the node budget hold for the
+ * whole search; every subtree counts its nodes into one shared counter.
+ */
+
+public class ParallelSolver implements SudokuSolver
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// Subtrees to aim for per thread, so that idle threads can steal some
+	private static final int SUBTREES_PER_THREAD = 8;
+
+	private SudokuBoard board;
+	private String valHeuristics;
+	private String varHeuristics;
+	private String cChecks;
+	private int numThreads;
+
+	private volatile SudokuBoard solution = null;
+	private SolverStatistics statistics = new SolverStatistics();
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public ParallelSolver ( SudokuBoard board, String val_sh, String var_sh, String cc, int numThreads )
+	{
+		this.board         = board;
+		this.valHeuristics = val_sh;
+		this.varHeuristics = var_sh;
+		this.cChecks       = cc;
+		this.numThreads    = Math.max( 1, numThreads );
+	}
+
+	// =================================================================
+	// Engine Functions
+	// =================================================================
+
+	public SolveStatus solve ( SolveLimits limits )
+	{
+		if ( solution != null )
+			return SolveStatus.SOLVED;
+
+		CancellationToken race = new CancellationToken( limits.getToken() );
+		AtomicReference<SolveStatus> stopped = new AtomicReference<SolveStatus>();
+		Subtree root = new Subtree( null, -1, 0, numThreads * SUBTREES_PER_THREAD,
+		                            limits.withToken( race ), race, stopped, new AtomicLong() );
+
+		ForkJoinPool pool = new ForkJoinPool( numThreads );
+		try
+		{
+			pool.invoke( root );
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+
+		if ( solution != null )
+			return SolveStatus.SOLVED;
+
+		// A subtree that was not searched to the end leaves the answer open
+		return stopped.get() != null ? stopped.get() : SolveStatus.UNSATISFIABLE;
+	}
+
+	public boolean hasSolution ( )
+	{
+		return solution != null;
+	}
+
+	// The solution, or the board as given if none was found
+	public SudokuBoard getSolution ( )
+	{
+		return solution != null ? solution : board;
+	}
+
+	// Statistics of the subtree searches, summed over every task
+	public synchronized SolverStatistics getStatistics ( )
+	{
+		return new SolverStatistics( statistics );
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private synchronized void addStatistics ( SolverStatistics s )
+	{
+		statistics.add( s );
+	}
+
+	// The first solution wins and stops every other task
+	private synchronized void claim ( SudokuBoard s, CancellationToken race )
+	{
+		if ( solution == null )
+		{
+			solution = s;
+			race.cancel();
+		}
+	}
+
+	// A subtree of the search, given by its parent's state and the decision
+	// that leads to it, or the whole search if there is no parent
+	private final class Subtree extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final long[] domains;
+		private final int variable;
+		private final int value;
+		private final int share;
+		private final SolveLimits limits;
+		private final CancellationToken race;
+		private final AtomicReference<SolveStatus> stopped;
+		private final AtomicLong nodes;
+
+		// share is the number of subtrees this one should still be split
+		// into, nodes the count of every subtree's nodes for the budget
+		Subtree ( long[] domains, int variable, int value, int share, SolveLimits limits,
+		          CancellationToken race, AtomicReference<SolveStatus> stopped, AtomicLong nodes )
+		{
+			this.domains   = domains;
+			this.variable  = variable;
+			this.value     = value;
+			this.share     = share;
+			this.limits    = limits;
+			this.race      = race;
+			this.stopped   = stopped;
+			this.nodes     = nodes;
+		}
+
+		@Override
+		protected void compute ( )
+		{
+			if ( race.isCancelled() )
+			{
+				stopped.compareAndSet( null, SolveStatus.CANCELLED );
+				return;
+			}
+
+			BTSolver solver;
+			if ( domains == null )
+			{
+				// Givens that fail to propagate leave nothing to split
+				solver = new BTSolver( board, new Trail(), valHeuristics, varHeuristics, cChecks );
+				if ( ! solver.propagateGivens() )
+					return;
+			}
+			else
+			{
+				solver = new BTSolver( board, new Trail(), valHeuristics, varHeuristics, cChecks );
+				solver.restoreDomains( domains );
+				if ( ! solver.decide( variable, value ) )
+					return;
+			}
+
+			Variable v = share > 1 ? solver.selectNextVariable() : null;
+			if ( v == null )
+			{
+				search( solver );
+				return;
+			}
+
+			List<Integer> order = solver.getNextValues( v );
+			int childShare = ( share + order.size() - 1 ) / order.size();
+			long[] saved = solver.saveDomains();
+			List<Subtree> children = new ArrayList<Subtree>( order.size() );
+			for ( int childValue : order )
+				children.add( new Subtree( saved, v.index(), childValue, childShare, limits, race, stopped, nodes ) );
+
+			invokeAll( children );
+		}
+
+		private void search ( BTSolver solver )
+		{
+			SolveStatus status = solver.solve( limits.sharingNodes( nodes ) );
+			addStatistics( solver.getStatistics() );
+
+			if ( status == SolveStatus.SOLVED )
+				claim( solver.getSolution(), race );
+			else if ( status != SolveStatus.UNSATISFIABLE )
+				stopped.compareAndSet( null, status );
+		}
+	}
+}
@@ -0,0 +1,225 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Races several solver configurations on the same board, one thread each,
+ * and keeps whichever finishes first.
+ *
+ * Which heuristics are fastest varies a lot from puzzle to puzzle, so
+ * running a few different ones side by side cuts the long solves that any
+ * single configuration runs into. Each configuration builds its own solver
+ * and Trail on its own thread. The first to find a solution, or to prove
+ * there is none, cancels the race token and the others stop within a few
+ * nodes. Cancelling the caller's token stops the whole race.
+ */
+
+public class PortfolioSolver implements SudokuSolver
+{
+
+	// =================================================================
+	// Configurations
+	// =================================================================
+
+	// One solver setup in the portfolio, as SolverFactory understands it
+	public static final class Config
+	{
+		final String engine;
+		final String valHeuristics;
+		final String varHeuristics;
+		final String cChecks;
+
+		// Restart schedule of a BTSolver configuration, null for none
+		final RestartPolicy restarts;
+
+		public Config ( String engine, String val_sh, String var_sh, String cc )
+		{
+			this( engine, val_sh, var_sh, cc, null );
+		}
+
+		public Config ( String engine, String val_sh, String var_sh, String cc, RestartPolicy restarts )
+		{
+			this.engine        = engine;
+			this.valHeuristics = val_sh;
+			this.varHeuristics = var_sh;
+			this.cChecks       = cc;
+			this.restarts      = restarts;
+		}
+
+		@Override
+		public String toString ( )
+		{
+			if ( ! engine.isEmpty() )
+				return engine;
+
+			return "[" + varHeuristics + "," + valHeuristics + "," + cChecks + "]"
+			       + ( restarts != null ? " restarts " + restarts : "" );
+		}
+	}
+
+	// Configurations that behave differently enough to be worth racing
+	public static Config[] defaultConfigs ( )
+	{
+		return new Config[] {
+			new Config( "", "LeastConstrainingValue", "MinimumRemainingValue", "forwardChecking" ),
+			new Config( "", "", "MRVwithTieBreaker", "norvigCheck" ),
+			new Config( "", "", "MRVwithTieBreaker", "subsetsCheck" ),
+			new Config( "", "tournVal", "tournVar", "tournCC" ),
+			new Config( "dancingLinks", "", "", "" ),
+		};
+	}
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private SudokuBoard board;
+	private Config[] configs;
+
+	// Result of the race, set by the first configuration to finish
+	private volatile SudokuSolver winner = null;
+	private int winnerIndex = -1;
+	private SolveStatus[] status;
+	private SolverStatistics statistics = new SolverStatistics();
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public PortfolioSolver ( SudokuBoard board )
+	{
+		this( board, defaultConfigs() );
+	}
+
+	public PortfolioSolver ( SudokuBoard board, Config[] configs )
+	{
+		if ( configs.length == 0 )
+			throw new IllegalArgumentException( "A portfolio needs at least one configuration" );
+
+		this.board   = board;
+		this.configs = configs.clone();
+	}
+
+	// =================================================================
+	// Engine Functions
+	// =================================================================
+
+	/**
+	 * Runs every configuration until one of them solves the board or
+	 * proves it unsatisfiable. If none does within the limits, returns
+	 * the status of the first configuration.
+	 */
+	public SolveStatus solve ( SolveLimits limits )
+	{
+		if ( winner != null && winner.hasSolution() )
+			return SolveStatus.SOLVED;
+
+		final CancellationToken race = new CancellationToken( limits.getToken() );
+		final SolveLimits raceLimits = limits.withToken( race );
+		final SolverStatistics[] workerStatistics = new SolverStatistics[ configs.length ];
+		status = new SolveStatus[ configs.length ];
+		List<Thread> workers = new ArrayList<Thread>();
+
+		for ( int c = configs.length - 1; c >= 0; --c )
+		{
+			final int index = c;
+			Runnable worker = new Runnable()
+			{
+				@Override
+				public void run ( )
+				{
+					workerStatistics[ index ] = race( index, raceLimits, race );
+				}
+			};
+
+			// The first configuration runs on the calling thread
+			if ( c == 0 )
+			{
+				worker.run();
+				break;
+			}
+
+			Thread t = new Thread( worker, "PortfolioSolver-" + c );
+			t.start();
+			workers.add( t );
+		}
+
+		for ( Thread t : workers )
+		{
+			try
+			{
+				t.join();
+			}
+			catch ( InterruptedException e )
+			{
+				race.cancel();
+				Thread.currentThread().interrupt();
+				return SolveStatus.CANCELLED;
+			}
+		}
+
+		for ( SolverStatistics stats : workerStatistics )
+			if ( stats != null )
+				statistics.add( stats );
+
+		if ( winner != null )
+			return status[ winnerIndex ];
+
+		return status[0];
+	}
+
+	public boolean hasSolution ( )
+	{
+		return winner != null && winner.hasSolution();
+	}
+
+	// The winner's solution, or the board as given if nobody won
+	public SudokuBoard getSolution ( )
+	{
+		return winner != null ? winner.getSolution() : board;
+	}
+
+	// Work done by every configuration, summed, so the solve time is the
+	// CPU time of the whole race rather than its wall time
+	public SolverStatistics getStatistics ( )
+	{
+		return new SolverStatistics( statistics );
+	}
+
+	// The configuration that decided the last race, or null if none did
+	public Config getWinner ( )
+	{
+		return winnerIndex >= 0 ? configs[ winnerIndex ] : null;
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	// Solves with configuration index and claims the race if it decided it
+	private SolverStatistics race ( int index, SolveLimits limits, CancellationToken race )
+	{
+		Config config = configs[ index ];
+		SudokuSolver solver = SolverFactory.create( board, new Trail(), config.engine,
+		                                            config.valHeuristics, config.varHeuristics, config.cChecks );
+		if ( config.restarts != null && solver instanceof BTSolver )
+			( (BTSolver) solver ).setRestarts( config.restarts );
+
+		SolveStatus s = solver.solve( limits );
+		status[ index ] = s;
+
+		if ( s == SolveStatus.SOLVED || s == SolveStatus.UNSATISFIABLE )
+			claim( index, solver, race );
+
+		return solver.getStatistics();
+	}
+
+	private synchronized void claim ( int index, SudokuSolver solver, CancellationToken race )
+	{
+		if ( winner != null )
+			return;
+
+		winnerIndex = index;
+		winner = solver;
+		race.cancel();
+	}
+}
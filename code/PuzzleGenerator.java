@@ -0,0 +1,352 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates valid puzzles with exactly one solution for any p x q board.
+ *
+ * A solution grid is built from the standard pattern and shuffled by
+ * permuting digits, rows within bands, bands, columns within stacks and
+ * stacks, all of which preserve validity. Cells are then cleared in random
+ * order and a clear is kept only if DLXSolver still counts a single solution,
+ * until the target number of clues is reached or no more cells can go.
+ *
+ * Every puzzle draws from its own SplittableRandom seeded from the base seed
+ * and its index, so a batch is identical whatever the number of threads.
+ *
+ * Usage: java PuzzleGenerator [P=3] [Q=3] [COUNT=1000] [CLUES=0] [SEED=1]
+ *        [THREADS=n] [MINNODES=0] [OUT=path]
+ *
+ * OUT writes the puzzles to a bulk file, see BulkPuzzleReader.
+ */
+
+public class PuzzleGenerator
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// Searches used to prove uniqueness or rate difficulty give up after
+	// this many nodes; an unproven clear is simply undone
+	private static final long CHECK_NODE_BUDGET = 20000;
+
+	// Fresh solution grids tried per puzzle when a minimum difficulty is set
+	private static final int MAX_ATTEMPTS = 16;
+
+	private int p;
+	private int q;
+	private int N;
+
+	// Puzzles rated below this many search nodes are regenerated
+	private long minNodes = 0;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public PuzzleGenerator ( int p, int q )
+	{
+		this.p = p;
+		this.q = q;
+		this.N = p*q;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	/**
+	 * Sets a minimum difficulty, measured as the nodes BTSolver with MRV and
+	 * forward checking needs to solve the puzzle and prove it unique. Easier
+	 * puzzles are regenerated from a new grid, up to a fixed number of
+	 * attempts, after which the hardest one rated is returned, or the last
+	 * one if none could be rated within the budget.
+	 */
+	public void setMinNodes ( long minNodes )
+	{
+		this.minNodes = minNodes;
+	}
+
+	// =================================================================
+	// Generation
+	// =================================================================
+
+	// Generates one puzzle with as few clues as possible, down to targetClues
+	public SudokuBoard generate ( long seed, int targetClues )
+	{
+		return generate( new SplittableRandom( seed ), targetClues, new Trail() );
+	}
+
+	// Generates count puzzles on numThreads threads, puzzle i from seed + i
+	public List<SudokuBoard> generate ( final int count, final long seed, final int targetClues, int numThreads )
+	{
+		final SudokuBoard[] puzzles = new SudokuBoard[ count ];
+		final AtomicInteger nextPuzzle = new AtomicInteger();
+		numThreads = Math.max( 1, numThreads );
+		List<Thread> workers = new ArrayList<Thread>();
+
+		for ( int w = 0; w < numThreads; ++w )
+		{
+			Runnable worker = new Runnable()
+			{
+				@Override
+				public void run ( )
+				{
+					Trail trail = new Trail();
+					for ( int i = nextPuzzle.getAndIncrement(); i < count; i = nextPuzzle.getAndIncrement() )
+					{
+						puzzles[i] = generate( new SplittableRandom( seed + i ), targetClues, trail );
+						trail.clear();
+					}
+				}
+			};
+
+			// A single worker runs on the calling thread
+			if ( numThreads == 1 )
+			{
+				worker.run();
+				break;
+			}
+
+			Thread t = new Thread( worker, "PuzzleGenerator-" + w );
+			t.start();
+			workers.add( t );
+		}
+
+		for ( Thread t : workers )
+		{
+			try
+			{
+				t.join();
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		// Slots are only left empty if the workers were interrupted
+		List<SudokuBoard> result = new ArrayList<SudokuBoard>( count );
+		for ( SudokuBoard puzzle : puzzles )
+			if ( puzzle != null )
+				result.add( puzzle );
+
+		return result;
+	}
+
+	// BTSolver search nodes needed to solve the board and prove it unique,
+	// or -1 if it is not unique or the check ran out of budget
+	public long rate ( SudokuBoard board, Trail trail )
+	{
+		BTSolver solver = (BTSolver) SolverFactory.create( board, trail, "", "", "MinimumRemainingValue", "forwardChecking" );
+		SolveStatus status = solver.countSolutions( 2, new SolveLimits( false, 0, CHECK_NODE_BUDGET, null ) );
+		trail.clear();
+
+		if ( status != SolveStatus.SOLVED || solver.getSolutionCount() != 1 )
+			return -1;
+
+		return solver.getStatistics().getNodes();
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	private SudokuBoard generate ( SplittableRandom random, int targetClues, Trail trail )
+	{
+		SudokuBoard best = null;
+		SudokuBoard last = null;
+		long bestNodes = -1;
+
+		for ( int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt )
+		{
+			SudokuBoard puzzle = dig( solutionGrid( p, q, random ), random, targetClues );
+			if ( minNodes <= 0 )
+				return puzzle;
+
+			last = puzzle;
+
+			long nodes = rate( puzzle, trail );
+			if ( nodes >= minNodes )
+				return puzzle;
+
+			if ( nodes > bestNodes )
+			{
+				best = puzzle;
+				bestNodes = nodes;
+			}
+		}
+
+		// Every rating ran out of budget, but dig() proved each puzzle unique
+		return best != null ? best : last;
+	}
+
+	// Clears cells in random order while the puzzle stays unique
+	private SudokuBoard dig ( int[][] grid, SplittableRandom random, int targetClues )
+	{
+		int clues = N*N;
+		int[] cells = shuffled( N*N, random );
+
+		for ( int k = 0; k < cells.length && clues > targetClues; ++k )
+		{
+			int row = cells[k] / N;
+			int col = cells[k] % N;
+			int value = grid[row][col];
+
+			grid[row][col] = 0;
+			if ( isUnique( grid ) )
+				clues--;
+			else
+				grid[row][col] = value;
+		}
+
+		return new SudokuBoard( p, q, grid );
+	}
+
+	// Exact cover counts solutions far faster than the CSP search, which
+	// matters since every cleared cell needs a check
+	private boolean isUnique ( int[][] grid )
+	{
+		DLXSolver solver = new DLXSolver( new SudokuBoard( p, q, grid ) );
+		SolveStatus status = solver.countSolutions( 2, new SolveLimits( false, 0, CHECK_NODE_BUDGET, null ) );
+		return status == SolveStatus.SOLVED && solver.getSolutionCount() == 1;
+	}
+
+	// A valid full p x q grid: the pattern solution under random
+	// symmetries, also used for the puzzle sets of SolverBenchmark
+	public static int[][] solutionGrid ( int p, int q, SplittableRandom random )
+	{
+		int N = p*q;
+		int[] digits = shuffled( N, random );
+		int[] rows = new int[N];
+		int[] cols = new int[N];
+
+		// Rows move within their band of p rows, bands move as a whole
+		int[] bands = shuffled( q, random );
+		for ( int b = 0; b < q; ++b )
+		{
+			int[] inBand = shuffled( p, random );
+			for ( int r = 0; r < p; ++r )
+				rows[ b*p + r ] = bands[b]*p + inBand[r];
+		}
+
+		int[] stacks = shuffled( p, random );
+		for ( int s = 0; s < p; ++s )
+		{
+			int[] inStack = shuffled( q, random );
+			for ( int c = 0; c < q; ++c )
+				cols[ s*q + c ] = stacks[s]*q + inStack[c];
+		}
+
+		int[][] grid = new int[N][N];
+		for ( int i = 0; i < N; ++i )
+		{
+			for ( int j = 0; j < N; ++j )
+			{
+				int r = rows[i], c = cols[j];
+				grid[i][j] = digits[ ( q * ( r % p ) + r / p + c ) % N ] + 1;
+			}
+		}
+		return grid;
+	}
+
+	// The numbers 0 to n - 1 in random order
+	public static int[] shuffled ( int n, SplittableRandom random )
+	{
+		int[] a = new int[n];
+		for ( int i = 0; i < n; ++i )
+			a[i] = i;
+
+		for ( int i = n - 1; i > 0; --i )
+		{
+			int j = random.nextInt( i + 1 );
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+		return a;
+	}
+
+	// =================================================================
+	// Command Line
+	// =================================================================
+
+	public static void main ( String[] args )
+	{
+		int p          = 3;
+		int q          = 3;
+		int count      = 1000;
+		int clues      = 0;
+		long seed      = 1;
+		long minNodes  = 0;
+		String out     = "";
+		int numThreads = Runtime.getRuntime().availableProcessors();
+
+		for ( String token : args )
+		{
+			String[] kv = token.split( "=", 2 );
+			if ( kv.length != 2 )
+			{
+				System.out.println( "[ERROR] Unrecognized argument: " + token );
+				return;
+			}
+
+			switch ( kv[0] )
+			{
+				case "P":        p = Integer.parseInt( kv[1] ); break;
+				case "Q":        q = Integer.parseInt( kv[1] ); break;
+				case "COUNT":    count = Integer.parseInt( kv[1] ); break;
+				case "CLUES":    clues = Integer.parseInt( kv[1] ); break;
+				case "SEED":     seed = Long.parseLong( kv[1] ); break;
+				case "THREADS":  numThreads = Integer.parseInt( kv[1] ); break;
+				case "MINNODES": minNodes = Long.parseLong( kv[1] ); break;
+				case "OUT":      out = kv[1]; break;
+				default:
+					System.out.println( "[ERROR] Unrecognized argument: " + token );
+					return;
+			}
+		}
+
+		PuzzleGenerator generator = new PuzzleGenerator( p, q );
+		generator.setMinNodes( minNodes );
+
+		long startTime = System.nanoTime();
+		List<SudokuBoard> puzzles = generator.generate( count, seed, clues, numThreads );
+		double seconds = ( System.nanoTime() - startTime ) / 1000000000.0;
+
+		long totalClues = 0;
+		for ( SudokuBoard puzzle : puzzles )
+			for ( int[] row : puzzle.getBoard() )
+				for ( int value : row )
+					if ( value != 0 )
+						totalClues++;
+
+		if ( ! out.isEmpty() )
+		{
+			try ( BulkPuzzleWriter writer = new BulkPuzzleWriter( new File( out ), p, q ) )
+			{
+				for ( SudokuBoard puzzle : puzzles )
+					writer.write( puzzle );
+			}
+			catch ( IOException e )
+			{
+				System.out.println( "[ERROR] " + e.getMessage() );
+				return;
+			}
+		}
+		else if ( ! puzzles.isEmpty() )
+		{
+			System.out.println( puzzles.get( 0 ) );
+		}
+
+		System.out.println( "Puzzles Generated: " + puzzles.size() );
+		System.out.println( "Average Clues: " + (double) totalClues / Math.max( 1, puzzles.size() ) );
+		System.out.println( "Time Taken (secs): " + seconds );
+		System.out.println( "Throughput (puzzles/sec): " + puzzles.size() / seconds );
+	}
+}
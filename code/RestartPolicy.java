@@ -0,0 +1,128 @@
+/**
+ * When BTSolver gives up on a run and restarts the search from the root,
+ * and how it breaks ties meanwhile.
+ *
+ * Solve times with a fixed configuration are heavy tailed: an early bad
+ * choice can trap the search in a huge subtree. With restarts every run is
+ * capped by a number of backtracks, the cap grows from run to run so the
+ * search stays complete, and ties in the heuristics are broken at random
+ * so each run explores differently. The caps follow either the Luby
+ * sequence (1, 1, 2, 1, 1, 2, 4, 1, ...) times a unit, or a geometric
+ * series. The dom/wdeg weights of tournVar can be kept from one run to
+ * the next, or reset so every run starts from scratch.
+ */
+
+public class RestartPolicy
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// A small unit restarts long before the search settles; 64 cost
+	// tournCC ten times the backtracks on 12x12 boards
+	public static final long DEFAULT_LUBY_UNIT = 16384;
+	public static final long DEFAULT_GEOMETRIC_FIRST = 64;
+	public static final double DEFAULT_GEOMETRIC_FACTOR = 1.5;
+	public static final long DEFAULT_SEED = 0x5EED;
+
+	private final boolean luby;
+	private final long base;
+	private final double factor;
+	private final boolean keepWeights;
+	private final long seed;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	private RestartPolicy ( boolean luby, long base, double factor, boolean keepWeights, long seed )
+	{
+		if ( base <= 0 || factor < 1 )
+			throw new IllegalArgumentException( "Restart cutoffs must be positive and must not shrink" );
+
+		this.luby        = luby;
+		this.base        = base;
+		this.factor      = factor;
+		this.keepWeights = keepWeights;
+		this.seed        = seed;
+	}
+
+	// Run i is capped at unit times the i-th term of the Luby sequence
+	public static RestartPolicy luby ( long unit )
+	{
+		return new RestartPolicy( true, unit, 1, true, DEFAULT_SEED );
+	}
+
+	// Run i is capped at first times factor to the power i
+	public static RestartPolicy geometric ( long first, double factor )
+	{
+		return new RestartPolicy( false, first, factor, true, DEFAULT_SEED );
+	}
+
+	// The same cutoffs, keeping the dom/wdeg weights across runs or not
+	public RestartPolicy keepingWeights ( boolean keep )
+	{
+		return new RestartPolicy( luby, base, factor, keep, seed );
+	}
+
+	// The same cutoffs, breaking ties with a generator seeded by seed
+	public RestartPolicy withSeed ( long seed )
+	{
+		return new RestartPolicy( luby, base, factor, keepWeights, seed );
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public boolean keepsWeights ( )
+	{
+		return keepWeights;
+	}
+
+	public long getSeed ( )
+	{
+		return seed;
+	}
+
+	// Backtracks allowed in run number run, counting from 0
+	public long cutoff ( int run )
+	{
+		if ( luby )
+			return saturatedProduct( base, lubyTerm( run + 1 ) );
+
+		double cutoff = base * Math.pow( factor, run );
+		return cutoff >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) cutoff;
+	}
+
+	@Override
+	public String toString ( )
+	{
+		return ( luby ? "luby(" + base + ")" : "geometric(" + base + "," + factor + ")" )
+		       + ( keepWeights ? "" : " fresh" );
+	}
+
+	// =================================================================
+	// Private Helper Methods
+	// =================================================================
+
+	// i-th term of the Luby sequence, i >= 1
+	private static long lubyTerm ( long i )
+	{
+		while ( true )
+		{
+			// Smallest k with 2^k - 1 >= i
+			int k = 64 - Long.numberOfLeadingZeros( i );
+			if ( i == ( 1L << k ) - 1 )
+				return 1L << ( k - 1 );
+
+			i -= ( 1L << ( k - 1 ) ) - 1;
+		}
+	}
+
+	private static long saturatedProduct ( long a, long b )
+	{
+		return b > Long.MAX_VALUE / a ? Long.MAX_VALUE : a * b;
+	}
+}
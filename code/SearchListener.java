@@ -0,0 +1,26 @@
+/**
+ * Receives events from a BTSolver search, e.g. to collect SearchMetrics.
+ * A solver without a listener skips the calls and the clock reads that
+ * feed them, so instrumentation costs nothing unless it is attached.
+ *
+ * Calls are made on the solving thread, depth being the decision level
+ * (0 for the first decision).
+ */
+
+public interface SearchListener
+{
+	// A value was assigned at depth
+	void nodeExpanded ( int depth );
+
+	// The assignment at depth was undone
+	void backtracked ( int depth );
+
+	// One consistency check, how long it took and whether it held
+	void propagated ( long nanos, boolean consistent );
+
+	// One variable selection and value ordering, and how long it took
+	void selected ( long nanos );
+
+	// The solve ended, having removed this many domain values
+	void solveFinished ( SolveStatus status, long valuesRemoved );
+}
@@ -0,0 +1,212 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Search counters gathered through the SearchListener events: nodes,
+ * propagation calls, domain values removed, maximum depth, time spent in
+ * propagation and in selection, and backtracks per depth.
+ *
+ * Each solving thread keeps its own instance and is the only one to
+ * write to it, so the counters are plain fields and the events cost no
+ * memory fences. An instance made with a sink adds its counts to the sink
+ * and starts over whenever a solve finishes. The sink, e.g. the instance
+ * Main registers with JMX, is only read and written under its lock, so
+ * other threads see every finished solve.
+ */
+
+public class SearchMetrics implements SearchListener, SearchMetricsMXBean
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private long solves;
+	private long nodes;
+	private long backtracks;
+	private long propagationCalls;
+	private long valuesRemoved;
+	private int maxDepth;
+	private long propagationNanos;
+	private long selectionNanos;
+	private long[] backtracksPerDepth = new long[16];
+
+	// Where the counts of every finished solve go, or null to keep them
+	private final SearchMetrics sink;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public SearchMetrics ( )
+	{
+		this( null );
+	}
+
+	// Counts for one solving thread and hands them to sink after each solve
+	public SearchMetrics ( SearchMetrics sink )
+	{
+		this.sink = sink;
+	}
+
+	// =================================================================
+	// Listener Events
+	// =================================================================
+
+	@Override
+	public void nodeExpanded ( int depth )
+	{
+		nodes++;
+		if ( depth > maxDepth )
+			maxDepth = depth;
+	}
+
+	@Override
+	public void backtracked ( int depth )
+	{
+		backtracks++;
+		if ( depth >= backtracksPerDepth.length )
+			backtracksPerDepth = Arrays.copyOf( backtracksPerDepth, Math.max( 2 * backtracksPerDepth.length, depth + 1 ) );
+
+		backtracksPerDepth[ depth ]++;
+	}
+
+	@Override
+	public void propagated ( long nanos, boolean consistent )
+	{
+		propagationCalls++;
+		propagationNanos += nanos;
+	}
+
+	@Override
+	public void selected ( long nanos )
+	{
+		selectionNanos += nanos;
+	}
+
+	@Override
+	public void solveFinished ( SolveStatus status, long valuesRemoved )
+	{
+		this.valuesRemoved += valuesRemoved;
+		solves++;
+		if ( sink != null )
+		{
+			sink.add( this );
+			reset();
+		}
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public synchronized long getSolves ( )
+	{
+		return solves;
+	}
+
+	public synchronized long getNodes ( )
+	{
+		return nodes;
+	}
+
+	public synchronized long getBacktracks ( )
+	{
+		return backtracks;
+	}
+
+	public synchronized long getPropagationCalls ( )
+	{
+		return propagationCalls;
+	}
+
+	public synchronized long getValuesRemoved ( )
+	{
+		return valuesRemoved;
+	}
+
+	public synchronized int getMaxDepth ( )
+	{
+		return maxDepth;
+	}
+
+	public synchronized long getPropagationNanos ( )
+	{
+		return propagationNanos;
+	}
+
+	public synchronized long getSelectionNanos ( )
+	{
+		return selectionNanos;
+	}
+
+	// Backtracks at each depth, up to the deepest one that had any
+	public synchronized long[] getBacktracksPerDepth ( )
+	{
+		long[] perDepth = backtracksPerDepth;
+		int length = perDepth.length;
+		while ( length > 0 && perDepth[ length - 1 ] == 0 )
+			length--;
+
+		return Arrays.copyOf( perDepth, length );
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	// Adds the counts of another instance, e.g. one per worker thread
+	public synchronized void add ( SearchMetrics m )
+	{
+		solves           += m.solves;
+		nodes            += m.nodes;
+		backtracks       += m.backtracks;
+		propagationCalls += m.propagationCalls;
+		valuesRemoved    += m.valuesRemoved;
+		maxDepth          = Math.max( maxDepth, m.maxDepth );
+		propagationNanos += m.propagationNanos;
+		selectionNanos   += m.selectionNanos;
+
+		long[] other = m.getBacktracksPerDepth();
+		if ( other.length > backtracksPerDepth.length )
+			backtracksPerDepth = Arrays.copyOf( backtracksPerDepth, other.length );
+
+		for ( int d = 0; d < other.length; ++d )
+			backtracksPerDepth[d] += other[d];
+	}
+
+	public synchronized void reset ( )
+	{
+		solves = nodes = backtracks = propagationCalls = valuesRemoved = 0;
+		propagationNanos = selectionNanos = 0;
+		maxDepth = 0;
+		backtracksPerDepth = new long[16];
+	}
+
+	// Publishes this instance on the platform MBean server under name,
+	// e.g. "SudokuSolver:type=SearchMetrics"
+	public void register ( String name ) throws JMException
+	{
+		ManagementFactory.getPlatformMBeanServer().registerMBean( this, new ObjectName( name ) );
+	}
+
+	// =================================================================
+	// String representation
+	// =================================================================
+
+	public synchronized String toString ( )
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append( "Nodes: " ).append( nodes ).append( "\n" );
+		sb.append( "Backtracks: " ).append( backtracks ).append( "\n" );
+		sb.append( "Propagation Calls: " ).append( propagationCalls ).append( "\n" );
+		sb.append( "Values Removed: " ).append( valuesRemoved ).append( "\n" );
+		sb.append( "Max Depth: " ).append( maxDepth ).append( "\n" );
+		sb.append( "Propagation Time (msecs): " ).append( propagationNanos / 1000000.0 ).append( "\n" );
+		sb.append( "Selection Time (msecs): " ).append( selectionNanos / 1000000.0 ).append( "\n" );
+		sb.append( "Backtracks Per Depth: " ).append( Arrays.toString( getBacktracksPerDepth() ) );
+		return sb.toString();
+	}
+}
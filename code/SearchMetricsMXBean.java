@@ -0,0 +1,27 @@
+/**
+ * Management interface of SearchMetrics, so a long running process can
+ * watch its solvers through JMX, e.g. with jconsole.
+ */
+
+public interface SearchMetricsMXBean
+{
+	long getSolves ( );
+
+	long getNodes ( );
+
+	long getBacktracks ( );
+
+	long getPropagationCalls ( );
+
+	long getValuesRemoved ( );
+
+	int getMaxDepth ( );
+
+	long getPropagationNanos ( );
+
+	long getSelectionNanos ( );
+
+	long[] getBacktracksPerDepth ( );
+
+	void reset ( );
+}
@@ -0,0 +1,131 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The limits a solve must respect: a wall clock deadline, a budget of
+ * nodes (values tried) and a cancellation token. Interrupting the solving
+ * thread counts as a cancellation as well.
+ *
+ * check() is meant for the innermost search loop. It compares two longs and
+ * reads one volatile flag on every call, and only reads the clock every
+ * CLOCK_INTERVAL steps.
+ *
+ * Limits made by sharingNodes() count the node budget over several solves
+ * at once, e.g. the subtrees of one ParallelSolver search. Each solve adds
+ * every new node to the shared counter, an atomic add per node that only
+ * solves with a budget pay for.
+ */
+
+public class SolveLimits
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// Number of search steps between two reads of System.nanoTime()
+	private static final int CLOCK_INTERVAL = 64;
+
+	private final boolean hasDeadline;
+	private final long deadlineNanos;
+	private final long nodeBudget;
+	private final CancellationToken token;
+
+	// Nodes of every solve sharing the budget, null if this solve has it
+	// to itself, and the nodes of this solve already added to it
+	private final AtomicLong sharedNodes;
+	private long reportedNodes = 0;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	// deadlineNanos is a System.nanoTime() value, nodeBudget <= 0 means none
+	public SolveLimits ( boolean hasDeadline, long deadlineNanos, long nodeBudget, CancellationToken token )
+	{
+		this( hasDeadline, deadlineNanos, nodeBudget, token, null );
+	}
+
+	private SolveLimits ( boolean hasDeadline, long deadlineNanos, long nodeBudget, CancellationToken token,
+	                      AtomicLong sharedNodes )
+	{
+		this.hasDeadline   = hasDeadline;
+		this.deadlineNanos = deadlineNanos;
+		this.nodeBudget    = nodeBudget <= 0 ? Long.MAX_VALUE : nodeBudget;
+		this.token         = token == null ? new CancellationToken() : token;
+		this.sharedNodes   = sharedNodes;
+	}
+
+	// No deadline, no node budget, never cancelled
+	public static SolveLimits none ( )
+	{
+		return new SolveLimits( false, 0, 0, null );
+	}
+
+	// A deadline timeoutMillis from now
+	public static SolveLimits withTimeout ( long timeoutMillis )
+	{
+		return withTimeout( timeoutMillis, 0, null );
+	}
+
+	public static SolveLimits withTimeout ( long timeoutMillis, long nodeBudget, CancellationToken token )
+	{
+		return new SolveLimits( true, System.nanoTime() + timeoutMillis * 1000000L, nodeBudget, token );
+	}
+
+	// The same deadline and node budget, polling token instead
+	public SolveLimits withToken ( CancellationToken token )
+	{
+		return new SolveLimits( hasDeadline, deadlineNanos, nodeBudget, token, sharedNodes );
+	}
+
+	// The same limits for one solve on one thread, its nodes counting
+	// against the budget together with those of every solve given nodes
+	public SolveLimits sharingNodes ( AtomicLong nodes )
+	{
+		if ( nodeBudget == Long.MAX_VALUE )
+			return this;
+
+		return new SolveLimits( hasDeadline, deadlineNanos, nodeBudget, token, nodes );
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public CancellationToken getToken ( )
+	{
+		return token;
+	}
+
+	public long getNodeBudget ( )
+	{
+		return nodeBudget;
+	}
+
+	/**
+	 * Returns the reason to stop, or null to keep searching.
+	 *
+	 * nodes is the number of nodes expanded by this solve so far, steps a
+	 * counter the caller increments on every pass through its loop.
+	 */
+	public SolveStatus check ( long nodes, long steps )
+	{
+		if ( sharedNodes != null )
+		{
+			long added = nodes - reportedNodes;
+			reportedNodes = nodes;
+			nodes = added != 0 ? sharedNodes.addAndGet( added ) : sharedNodes.get();
+		}
+
+		if ( nodes >= nodeBudget )
+			return SolveStatus.NODE_LIMIT;
+
+		if ( token.isCancelled() || Thread.currentThread().isInterrupted() )
+			return SolveStatus.CANCELLED;
+
+		if ( hasDeadline && steps % CLOCK_INTERVAL == 0 && System.nanoTime() - deadlineNanos >= 0 )
+			return SolveStatus.TIMED_OUT;
+
+		return null;
+	}
+}
@@ -0,0 +1,22 @@
+/**
+ * Outcome of a solve. Searches stopped by a limit report why they stopped,
+ * so a timeout is never mistaken for a board without a solution.
+ */
+
+public enum SolveStatus
+{
+	// A solution was found
+	SOLVED,
+
+	// The whole search space was explored without finding a solution
+	UNSATISFIABLE,
+
+	// The wall clock deadline passed before the search finished
+	TIMED_OUT,
+
+	// The node budget was used up before the search finished
+	NODE_LIMIT,
+
+	// The cancellation token was triggered or the thread was interrupted
+	CANCELLED
+}
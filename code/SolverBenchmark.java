@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Puzzle sets and solve tasks for the JMH benchmarks of BTSolver in
+ * bench/, see bench.BTSolverBenchmark. JMH only accepts benchmarks in a
+ * named package, and code there cannot name the classes of the default
+ * package, so the benchmarks look up solveTask by reflection once per
+ * trial and only ever see the task it returns.
+ *
+ * The puzzle sets are fixed and seeded, so results are comparable from
+ * one run to the next.
+ */
+
+public class SolverBenchmark
+{
+	// Fraction of cells cleared from the seeded solution grids
+	private static final double HOLES = 0.55;
+
+	/**
+	 * A task that solves the puzzles of the size x size set in turn, one
+	 * per call, and returns the SolveStatus. var, val and cc are the
+	 * command line tokens FIRST/MRV/MAD, INORDER/LCV and
+	 * NONE/FC/NOR/SUB/CBJ. Each solve is capped at limitMillis.
+	 */
+	public static Supplier<Object> solveTask ( int size, int puzzles, String var, String val, String cc,
+	                                           final long limitMillis )
+	{
+		int[] pq = blockShape( size );
+		final List<SudokuBoard> set = puzzleSet( pq[0], pq[1], puzzles );
+		final String var_sh = varHeuristic( var );
+		final String val_sh = valHeuristic( val );
+		final String cc_sh  = consistencyCheck( cc );
+
+		return new Supplier<Object>()
+		{
+			private int next = 0;
+
+			@Override
+			public Object get ( )
+			{
+				SudokuBoard board = set.get( next );
+				next = ( next + 1 ) % set.size();
+				return solveOnce( board, var_sh, val_sh, cc_sh, limitMillis );
+			}
+		};
+	}
+
+	// =================================================================
+	// Measurement
+	// =================================================================
+
+	private static SolveStatus solveOnce ( SudokuBoard board, String var_sh, String val_sh, String cc_sh, long limitMillis )
+	{
+		BTSolver solver = new BTSolver( board, new Trail(), val_sh, var_sh, cc_sh );
+		if ( ! cc_sh.isEmpty() )
+			solver.propagateGivens();
+
+		return solver.solve( SolveLimits.withTimeout( limitMillis ) );
+	}
+
+	// =================================================================
+	// Puzzle Sets
+	// =================================================================
+
+	// The same seeds are used on every run, so results are comparable
+	private static List<SudokuBoard> puzzleSet ( int p, int q, int count )
+	{
+		List<SudokuBoard> set = new ArrayList<SudokuBoard>();
+		for ( int i = 0; i < count; ++i )
+			set.add( seededPuzzle( p, q, 1000L * p * q + i ) );
+
+		return set;
+	}
+
+	// Shuffles a pattern solution grid and clears a fixed share of cells.
+	// The result is always solvable, though not necessarily unique.
+	private static SudokuBoard seededPuzzle ( int p, int q, long seed )
+	{
+		SplittableRandom random = new SplittableRandom( seed );
+		int N = p*q;
+
+		int[][] board = PuzzleGenerator.solutionGrid( p, q, random );
+		int[] cells = PuzzleGenerator.shuffled( N*N, random );
+		for ( int k = 0; k < (int) ( N*N * HOLES ); ++k )
+			board[ cells[k] / N ][ cells[k] % N ] = 0;
+
+		return new SudokuBoard( p, q, board );
+	}
+
+	// =================================================================
+	// Argument Translation
+	// =================================================================
+
+	private static int[] blockShape ( int n )
+	{
+		switch ( n )
+		{
+			case 9:  return new int[] { 3, 3 };
+			case 12: return new int[] { 3, 4 };
+			case 16: return new int[] { 4, 4 };
+			case 25: return new int[] { 5, 5 };
+			default: throw new IllegalArgumentException( "Unsupported board size: " + n );
+		}
+	}
+
+	private static String varHeuristic ( String token )
+	{
+		switch ( token )
+		{
+			case "MRV": return "MinimumRemainingValue";
+			case "MAD": return "MRVwithTieBreaker";
+			default:    return "";
+		}
+	}
+
+	private static String valHeuristic ( String token )
+	{
+		return token.equals( "LCV" ) ? "LeastConstrainingValue" : "";
+	}
+
+	private static String consistencyCheck ( String token )
+	{
+		switch ( token )
+		{
+			case "FC":  return "forwardChecking";
+			case "NOR": return "norvigCheck";
+			case "SUB": return "subsetsCheck";
+			case "CBJ": return "conflictBackjumping";
+			default:    return "";
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * Builds the solving engine selected on the command line, ready to solve.
+ */
+
+public class SolverFactory
+{
+	public static SudokuSolver create ( SudokuBoard board, Trail trail, String engine,
+	                                    String val_sh, String var_sh, String cc )
+	{
+		switch ( engine )
+		{
+			case "dancingLinks":
+				return new DLXSolver( board );
+
+			case "flat":
+				return new FlatSolver( board );
+
+			case "portfolio":
+				return new PortfolioSolver( board );
+
+			case "parallel":
+				return new ParallelSolver( board, val_sh, var_sh, cc, Runtime.getRuntime().availableProcessors() );
+
+			default:
+				BTSolver solver = new BTSolver( board, trail, val_sh, var_sh, cc );
+				// Propagate the givens before the first decision, the solver
+				// keeps the result
+				if ( cc.equals( "norvigCheck" ) || cc.equals( "forwardChecking" ) || cc.equals( "tournCC" )
+				     || cc.equals( "subsetsCheck" ) || cc.equals( "conflictBackjumping" ) )
+				{
+					solver.propagateGivens();
+				}
+				return solver;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Search statistics for a single BTSolver. Every solver owns its own
+ * instance, so solvers running on different threads never share counters.
+ */
+
+public class SolverStatistics
+{
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private long nodes;
+	private long backtracks;
+	private long trailPushes;
+	private long solveTimeNanos;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public SolverStatistics ( )
+	{
+	}
+
+	// Copy Constructor
+	public SolverStatistics ( SolverStatistics s )
+	{
+		this.nodes          = s.nodes;
+		this.backtracks     = s.backtracks;
+		this.trailPushes    = s.trailPushes;
+		this.solveTimeNanos = s.solveTimeNanos;
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	// Number of values tried on decision variables
+	public long getNodes ( )
+	{
+		return nodes;
+	}
+
+	// Number of decisions that were undone
+	public long getBacktracks ( )
+	{
+		return backtracks;
+	}
+
+	// Number of variables saved on the trail during the solve
+	public long getTrailPushes ( )
+	{
+		return trailPushes;
+	}
+
+	public long getSolveTimeNanos ( )
+	{
+		return solveTimeNanos;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	public void addNode ( )
+	{
+		nodes++;
+	}
+
+	public void addBacktrack ( )
+	{
+		backtracks++;
+	}
+
+	public void addTrailPushes ( long pushes )
+	{
+		trailPushes += pushes;
+	}
+
+	public void addSolveTime ( long nanos )
+	{
+		solveTimeNanos += nanos;
+	}
+
+	// Accumulates the counters of another solver, e.g. for a batch summary
+	public void add ( SolverStatistics s )
+	{
+		nodes          += s.nodes;
+		backtracks     += s.backtracks;
+		trailPushes    += s.trailPushes;
+		solveTimeNanos += s.solveTimeNanos;
+	}
+
+	public void clear ( )
+	{
+		nodes          = 0;
+		backtracks     = 0;
+		trailPushes    = 0;
+		solveTimeNanos = 0;
+	}
+
+	// =================================================================
+	// String representation
+	// =================================================================
+
+	public String toString ( )
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append( "Nodes: " ).append( nodes );
+		sb.append( "\tBacktracks: " ).append( backtracks );
+		sb.append( "\tTrail Pushes: " ).append( trailPushes );
+		sb.append( "\tTime (msecs): " ).append( solveTimeNanos / 1000000.0 );
+		return sb.toString();
+	}
+}
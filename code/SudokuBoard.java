@@ -3,7 +3,7 @@ import java.io.FileReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.Scanner;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Represents a Sudoku Board. This is converted to a constraint network,
@@ -41,33 +41,16 @@ public class SudokuBoard
 	{
 		this.p = p;
 		this.q = q;
-		this.board = board == null ? new int[9][9] : board;
+		this.board = board == null ? new int[p*q][p*q] : board;
 	}
 
-	// Will generate a random Sudoku board
+	// Will generate a random Sudoku board with a unique solution and as few
+	// clues as possible down to m, see PuzzleGenerator
 	public SudokuBoard ( int p, int q, int m )
 	{
 		this.p = p;
 		this.q = q;
-		int N = p*q;
-		board = new int[N][N];
-
-		if ( m > N*N )
-			m = N*N;
-
-		Random integerPicker = new Random();
-
-		for ( int i = 0; i < m; )
-		{
-			int randomRow = integerPicker.nextInt( N );
-			int randomCol = integerPicker.nextInt( N );
-			int randomAssignment = integerPicker.nextInt( N ) + 1;
-			if ( board[randomRow][randomCol] == 0 && check( randomRow, randomCol, randomAssignment ) )
-			{
-				board[randomRow][randomCol] = randomAssignment;
-				i++;
-			}
-		}
+		this.board = new PuzzleGenerator( p, q ).generate( new SplittableRandom().nextLong(), m ).getBoard();
 	}
 
 	// Will load a Sudoku board from file
@@ -163,55 +146,6 @@ public class SudokuBoard
 	// Private Helper Methods
 	// =================================================================
 
-	private boolean check ( int row, int col, int value )
-	{
-		return checkRow( row, value ) && checkCol( col, value ) && checkBox( row, col, value );
-	}
-
-	private boolean checkRow ( int row, int value )
-	{
-		for ( int i = 0; i < p*q; ++i )
-		{
-			if ( board[row][i] == value )
-			{
-				return false;
-			}
-		}
-
-		return true;
-	}
-
-	private boolean checkCol ( int col, int value )
-	{
-		for ( int i = 0; i < p*q; ++i )
-		{
-			if ( board[i][col] == value )
-			{
-				return false;
-			}
-		}
-
-		return true;
-	}
-
-	private boolean checkBox ( int row, int col, int value )
-	{
-		int rDiv = row / p;
-		int cDiv = col / q;
-		for ( int i = rDiv * p; i < (rDiv + 1) * p; ++i )
-		{
-			for ( int j = cDiv * q; j < (cDiv + 1) * q; ++j )
-			{
-				if ( board[i][j] == value )
-				{
-					return false;
-				}
-			}
-		}
-
-		return true;
-	}
-
 	private int odometerToInt ( String str )
 	{
 		int x = 0;
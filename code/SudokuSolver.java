@@ -0,0 +1,17 @@
+/**
+ * Common interface of the solving engines that Main can select, so boards
+ * can be routed to whichever engine is fastest for them.
+ */
+
+public interface SudokuSolver
+{
+	// Searches for a solution within the given limits
+	SolveStatus solve ( SolveLimits limits );
+
+	boolean hasSolution ( );
+
+	// The solved board, or the current partial assignment if unsolved
+	SudokuBoard getSolution ( );
+
+	SolverStatistics getStatistics ( );
+}
@@ -1,8 +1,12 @@
-import java.util.EmptyStackException;
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Represents the trail of changes made. This allows backtracking to occur.
+ *
+ * Each entry is a variable plus the bitmask its domain had before the
+ * change, kept in growable primitive arrays. Markers are plain int positions,
+ * so once the arrays have grown to the depth of the search neither push nor
+ * undo allocates, and undo only touches the entries made after the marker.
  */
 
 public class Trail
@@ -11,11 +15,19 @@ public class Trail
 	// Properties
 	// =================================================================
 
-	private Stack<Object[]> trailStack  = new Stack<Object[]>();
-	private Stack<Integer>  trailMarker = new Stack<Integer>();
+	// Entry i saved variables[i], whose domain words start at wordOffsets[i]
+	private Variable[] variables = new Variable[64];
+	private int[] wordOffsets = new int[64];
+	private long[] savedWords = new long[64];
+	private int size = 0;
+	private int wordsUsed = 0;
 
-	private static int numPush = 0;
-	private static int numUndo = 0;
+	// Trail sizes at which markers were placed
+	private int[] trailMarker = new int[16];
+	private int numMarkers = 0;
+
+	private int numPush = 0;
+	private int numUndo = 0;
 
 	// =================================================================
 	// Constructor
@@ -31,15 +43,15 @@ public class Trail
 
 	public int size ( )
 	{
-		return trailStack.size();
+		return size;
 	}
 
-	public static int getPushCount ( )
+	public int getPushCount ( )
 	{
 		return numPush;
 	}
 
-	public static int getUndoCount ( )
+	public int getUndoCount ( )
 	{
 		return numUndo;
 	}
@@ -51,7 +63,10 @@ public class Trail
 	// Places a marker in the trail
 	public void placeTrailMarker ( )
 	{
-		trailMarker.add( trailStack.size() );
+		if ( numMarkers == trailMarker.length )
+			trailMarker = Arrays.copyOf( trailMarker, 2 * numMarkers );
+
+		trailMarker[ numMarkers++ ] = size;
 	}
 
 	/**
@@ -64,36 +79,51 @@ public class Trail
 	public void push ( Variable v )
 	{
 		numPush++;
-		Object[] vPair = { v, new Domain( v.getDomain() )};
-		trailStack.push( vPair );
+		if ( size == variables.length )
+		{
+			variables   = Arrays.copyOf( variables, 2 * size );
+			wordOffsets = Arrays.copyOf( wordOffsets, 2 * size );
+		}
+
+		Domain d = v.getDomain();
+		if ( wordsUsed + d.wordCount() > savedWords.length )
+			savedWords = Arrays.copyOf( savedWords, Math.max( 2 * savedWords.length, wordsUsed + d.wordCount() ) );
+
+		variables[ size ]   = v;
+		wordOffsets[ size ] = wordsUsed;
+		wordsUsed += d.saveTo( savedWords, wordsUsed );
+		size++;
 	}
 
 	// Pops and restores variables on the trail until the last trail marker
 	public void undo ( )
 	{
 		numUndo++;
-		try
+		if ( numMarkers == 0 )
 		{
-			int targetSize = trailMarker.pop();
-			for ( int size = trailStack.size(); size > targetSize; --size )
-			{
-				Object[] vPair = trailStack.pop();
-				Variable v = (Variable) vPair[0];
-				v.setDomain((Domain) vPair[1]);
-				v.setModified( false );
-				v.unassign();
-			}
+			clear();
+			return;
 		}
-		catch ( EmptyStackException e )
+
+		int targetSize = trailMarker[ --numMarkers ];
+		while ( size > targetSize )
 		{
-			clear();
+			size--;
+			Variable v = variables[ size ];
+			v.restoreDomain( savedWords, wordOffsets[ size ] );
+			v.setModified( false );
+			v.unassign();
+			variables[ size ] = null;
+			wordsUsed = wordOffsets[ size ];
 		}
 	}
 
 	// Clears the trail
 	public void clear ( )
 	{
-		trailStack.clear();
-		trailMarker.clear();
+		Arrays.fill( variables, 0, size, null );
+		size = 0;
+		wordsUsed = 0;
+		numMarkers = 0;
 	}
 }
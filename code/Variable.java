@@ -11,13 +11,13 @@ public class Variable implements Iterable<Integer>
 	// Properties
 	// =================================================================
 
-	private static int namingCounter = 1;
 	private Domain domain;
 	private int row, col, block;
+	private int index = -1;
+	private ConstraintNetwork network;
 	private boolean modified;
 	private boolean changeable;
 	private boolean assigned;
-	private String name;
 
 	private int oldSize;
 
@@ -31,7 +31,6 @@ public class Variable implements Iterable<Integer>
 		this.row = row;
 		this.col = col;
 		this.block = block;
-		this.name = "v" + namingCounter++;
 		this.oldSize = size();
 		this.modified = false;
 		this.changeable = true;
@@ -52,7 +51,7 @@ public class Variable implements Iterable<Integer>
 		this.col = v.col;
 		this.block = v.block;
 		this.modified = v.modified;
-		this.name = v.name;
+		this.index = v.index;
 		this.changeable = v.changeable;
 	}
 
@@ -90,16 +89,22 @@ public class Variable implements Iterable<Integer>
 		return block;
 	}
 
+	// Position of the variable in its ConstraintNetwork, -1 until added
+	public int index ( )
+	{
+		return index;
+	}
+
 	public int size ( )
 	{
 		return domain.size();
 	}
 
 	// Returns the assigned value or 0 if unassigned
-	public Integer getAssignment ( )
+	public int getAssignment ( )
 	{
 		if ( isAssigned() )
-			return domain.getValues().get( 0 );
+			return domain.first();
 
 		return 0;
 	}
@@ -109,9 +114,10 @@ public class Variable implements Iterable<Integer>
 		return domain;
 	}
 
+	// Names follow the variable's position in its network: v1, v2, ...
 	public String getName ( )
 	{
-		return name;
+		return "v" + ( index + 1 );
 	}
 
 	public List<Integer> getValues ( )
@@ -124,14 +130,33 @@ public class Variable implements Iterable<Integer>
 	// =================================================================
 
 
+	public void setIndex ( int index )
+	{
+		this.index = index;
+	}
+
+	// Registers the network to notify whenever this variable is modified
+	public void attach ( ConstraintNetwork network )
+	{
+		this.network = network;
+		if ( modified )
+			network.variableModified( this );
+	}
+
 	public void setModified ( boolean modified )
 	{
-		this.modified = modified;
 		this.domain.setModified( modified );
+		if ( modified )
+			markModified();
+		else
+			this.modified = false;
 	}
 
 	public void unassign(){
-		this.assigned = false;
+		if (this.assigned) {
+			this.assigned = false;
+			notifyChanged(true);
+		}
 	}
 
 	// Assign a value to the variable
@@ -140,8 +165,15 @@ public class Variable implements Iterable<Integer>
 		if ( ! changeable )
 			return;
 
+		boolean wasAssigned = this.assigned;
 		this.assigned = true;
-		setDomain( new Domain( val ) );
+		int removed = domain.size() - ( domain.contains( val ) ? 1 : 0 );
+		domain.assign( val );
+		if ( network != null )
+			network.valuesRemoved( removed );
+
+		notifyChanged( wasAssigned );
+		markModified();
 	}
 
 	// Sets the domain of the variable
@@ -153,18 +185,52 @@ public class Variable implements Iterable<Integer>
 		if ( ! domain.equals( d ) )
 		{
 			domain = d;
-			modified = true;
+			notifyChanged( assigned );
+			markModified();
 		}
 	}
 
+	// Restores the domain from a bitmask saved on the trail, in place
+	public void restoreDomain ( long[] words, int offset )
+	{
+		if ( ! changeable )
+			return;
+
+		int oldSize = domain.size();
+		domain.restoreFrom( words, offset );
+		if ( domain.size() != oldSize )
+			notifyChanged( assigned );
+	}
+
 	// Removes a value from the domain
 	public void removeValueFromDomain ( int val )
 	{
 		if ( ! changeable )
 			return;
 
-		domain.remove( val );
-		this.modified = domain.isModified();
+		if ( domain.remove( val ) )
+		{
+			if ( network != null )
+				network.valuesRemoved( 1 );
+
+			notifyChanged( assigned );
+			markModified();
+		}
+	}
+
+	// Tells the network the domain size or assignment may have changed
+	private void notifyChanged ( boolean wasAssigned )
+	{
+		if ( network != null )
+			network.variableChanged( this, wasAssigned );
+	}
+
+	// Flags the variable and puts it on the network's propagation worklist
+	private void markModified ( )
+	{
+		modified = true;
+		if ( network != null )
+			network.variableModified( this );
 	}
 
 	// =================================================================
@@ -185,7 +251,7 @@ public class Variable implements Iterable<Integer>
 	{
 		//prints node stats
 		StringBuilder sb = new StringBuilder();
-		sb.append(" Name: "+name);
+		sb.append(" Name: "+getName());
 		sb.append("\tdomain: {");
 
 		for ( Integer i : domain )
@@ -195,11 +261,4 @@ public class Variable implements Iterable<Integer>
 		sb.append("}");
 		return sb.toString();
 	}
-
-	// =================================================================
-	// Reset Naming Counter
-	// =================================================================
-	public static void resetCounter(){
-		namingCounter = 1;
-	}
 }
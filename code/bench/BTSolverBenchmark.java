@@ -0,0 +1,99 @@
+package bench;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of BTSolver over every combination of variable selector,
+ * value selector and consistency check, on the fixed puzzle sets of
+ * SolverBenchmark for each board size. One operation solves one puzzle of
+ * the set, the puzzles taking turns.
+ *
+ * Build with "mvn package" and run with "java -jar target/benchmarks.jar".
+ * throughput reports ops/sec and latency the sampled solve times with
+ * their p99; add "-prof gc" for the allocation rate. Parameters narrow
+ * the run, e.g. "-p size=9,12 -p cc=FC,NOR".
+ *
+ * Each solve is capped at limitSeconds so hopeless combinations, e.g. no
+ * propagation on 25x25, still finish; a capped solve takes the whole limit.
+ */
+
+@State( Scope.Thread )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+public class BTSolverBenchmark
+{
+
+	// =================================================================
+	// Parameters
+	// =================================================================
+
+	@Param( { "9", "12", "16", "25" } )
+	public int size;
+
+	@Param( { "FIRST", "MRV", "MAD" } )
+	public String var;
+
+	@Param( { "INORDER", "LCV" } )
+	public String val;
+
+	@Param( { "NONE", "FC", "NOR", "SUB", "CBJ" } )
+	public String cc;
+
+	@Param( "10" )
+	public int puzzles;
+
+	@Param( "10" )
+	public int limitSeconds;
+
+	private Supplier<Object> task;
+
+	// =================================================================
+	// Setup
+	// =================================================================
+
+	@Setup( Level.Trial )
+	@SuppressWarnings( "unchecked" )
+	public void setUp ( ) throws ReflectiveOperationException
+	{
+		Method solveTask = Class.forName( "SolverBenchmark" ).getMethod( "solveTask",
+				int.class, int.class, String.class, String.class, String.class, long.class );
+
+		task = (Supplier<Object>) solveTask.invoke( null, size, puzzles, var, val, cc, limitSeconds * 1000L );
+	}
+
+	// =================================================================
+	// Benchmarks
+	// =================================================================
+
+	@Benchmark
+	@BenchmarkMode( Mode.Throughput )
+	@OutputTimeUnit( TimeUnit.SECONDS )
+	public Object throughput ( )
+	{
+		return task.get();
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.SampleTime )
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	public Object latency ( )
+	{
+		return task.get();
+	}
+}
@@ -0,0 +1,182 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Regression cases for solver bugs, each on the smallest board that
+ * showed it.
+ */
+
+public class SolverRegressionTest
+{
+
+	// =================================================================
+	// Boards
+	// =================================================================
+
+	// 6x6 board whose givens never clash directly, but propagating them
+	// forces two cells to the same value
+	private static SudokuBoard unsatisfiable ( )
+	{
+		return new SudokuBoard( 2, 3, new int[][] {
+			{ 4, 0, 1, 5, 3, 6 },
+			{ 0, 0, 3, 0, 1, 0 },
+			{ 2, 3, 4, 0, 6, 5 },
+			{ 5, 1, 0, 3, 0, 4 },
+			{ 0, 6, 0, 4, 5, 1 },
+			{ 1, 4, 0, 6, 2, 3 },
+		} );
+	}
+
+	// The solution a new dancing links solver finds for the puzzle
+	private static int[][] freshSolution ( SudokuBoard puzzle )
+	{
+		DLXSolver solver = new DLXSolver( puzzle );
+		solver.solve( SolveLimits.none() );
+		return solver.getSolution().getBoard();
+	}
+
+	private static BTSolver btSolver ( SudokuBoard board, String cc )
+	{
+		return (BTSolver) SolverFactory.create( board, new Trail(), "", "", "MinimumRemainingValue", cc );
+	}
+
+	// =================================================================
+	// Dancing links re-entry
+	// =================================================================
+
+	@Test
+	public void dancingLinksCountsAfterSolve ( )
+	{
+		SudokuBoard puzzle = new PuzzleGenerator( 3, 3 ).generate( 1, 30 );
+		DLXSolver solver = new DLXSolver( puzzle );
+		assertEquals( SolveStatus.SOLVED, solver.solve( SolveLimits.none() ) );
+		SudokuBoard solution = solver.getSolution();
+
+		assertEquals( SolveStatus.SOLVED, solver.countSolutions( 5, SolveLimits.none() ) );
+		assertEquals( 1, solver.getSolutionCount() );
+		assertTrue( Arrays.deepEquals( solution.getBoard(), solver.getSolution().getBoard() ) );
+	}
+
+	@Test
+	public void dancingLinksSolvesAfterHittingTheNodeBudget ( )
+	{
+		SudokuBoard puzzle = new PuzzleGenerator( 3, 3 ).generate( 1, 30 );
+		DLXSolver solver = new DLXSolver( puzzle );
+		assertEquals( SolveStatus.NODE_LIMIT, solver.solve( new SolveLimits( false, 0, 5, null ) ) );
+		assertEquals( SolveStatus.SOLVED, solver.countSolutions( 2, SolveLimits.none() ) );
+		assertEquals( 1, solver.getSolutionCount() );
+		assertTrue( Arrays.deepEquals( freshSolution( puzzle ), solver.getSolution().getBoard() ) );
+	}
+
+	// =================================================================
+	// Constraint members
+	// =================================================================
+
+	@Test
+	public void networkRecountsConstraintGivenAnotherMember ( )
+	{
+		SudokuBoard puzzle = new PuzzleGenerator( 3, 3 ).generate( 1, 30 );
+		ConstraintNetwork network = new ConstraintNetwork( puzzle );
+		assertTrue( network.isConsistent() );
+
+		// Join a given from outside the constraint to an open member that
+		// can still take its value, then assign that value
+		Constraint c = network.getConstraints().get( 0 );
+		for ( Variable given : network.getVariables() )
+		{
+			if ( ! given.isAssigned() || c.contains( given ) )
+				continue;
+
+			for ( Variable member : c.vars )
+			{
+				if ( member.isAssigned() || ! member.getDomain().contains( given.getAssignment() ) )
+					continue;
+
+				c.addVariable( given );
+				member.assignValue( given.getAssignment() );
+				assertFalse( network.isConsistent() );
+				return;
+			}
+		}
+		throw new AssertionError( "no open member can take a given's value" );
+	}
+
+	// =================================================================
+	// Parallel node budget
+	// =================================================================
+
+	@Test
+	public void parallelSolverSharesOneNodeBudget ( )
+	{
+		int threads = 4;
+		long budget = 500;
+		SudokuBoard puzzle = new PuzzleGenerator( 4, 4 ).generate( 1, 100 );
+		ParallelSolver solver = new ParallelSolver( puzzle, "", "MinimumRemainingValue", "forwardChecking", threads );
+
+		assertEquals( SolveStatus.NODE_LIMIT, solver.solve( new SolveLimits( false, 0, budget, null ) ) );
+		// Each thread may pass the check once before the others' nodes land
+		assertTrue( solver.getStatistics().getNodes() <= budget + threads );
+	}
+
+	// =================================================================
+	// Unsatisfiable givens
+	// =================================================================
+
+	@Test
+	public void dancingLinksFindsNoSolution ( )
+	{
+		assertEquals( SolveStatus.UNSATISFIABLE, new DLXSolver( unsatisfiable() ).solve( SolveLimits.none() ) );
+	}
+
+	@Test
+	public void countSolutionsFindsNoneWhenGivensConflict ( )
+	{
+		for ( String cc : new String[] { "", "forwardChecking", "norvigCheck", "subsetsCheck",
+		                                 "tournCC", "conflictBackjumping" } )
+		{
+			BTSolver solver = btSolver( unsatisfiable(), cc );
+			assertEquals( SolveStatus.UNSATISFIABLE, solver.countSolutions( 2, SolveLimits.none() ), cc );
+			assertEquals( 0, solver.getSolutionCount(), cc );
+			assertFalse( solver.hasSolution(), cc );
+		}
+	}
+
+	@Test
+	public void everyEngineFindsNoSolutionWhenGivensConflict ( )
+	{
+		for ( String engine : new String[] { "dancingLinks", "flat", "portfolio", "parallel" } )
+		{
+			SudokuSolver solver = SolverFactory.create( unsatisfiable(), new Trail(), engine,
+			                                            "", "MinimumRemainingValue", "forwardChecking" );
+			assertEquals( SolveStatus.UNSATISFIABLE, solver.solve( SolveLimits.none() ), engine );
+			assertFalse( solver.hasSolution(), engine );
+		}
+
+		for ( String cc : new String[] { "", "forwardChecking", "norvigCheck", "subsetsCheck",
+		                                 "tournCC", "conflictBackjumping" } )
+		{
+			BTSolver solver = btSolver( unsatisfiable(), cc );
+			assertEquals( SolveStatus.UNSATISFIABLE, solver.solve( SolveLimits.none() ), cc );
+			assertFalse( solver.hasSolution(), cc );
+		}
+	}
+
+	@Test
+	public void batchCountsNoSolutionWhenGivensConflict ( )
+	{
+		BatchSolver batch = new BatchSolver( "", "", "MinimumRemainingValue", "forwardChecking", 1, 0, 0 );
+		batch.solve( new SudokuBoard[] { unsatisfiable() } );
+		assertEquals( 0, batch.getNumSolutions() );
+	}
+
+	@Test
+	public void rateRejectsUnsatisfiableBoard ( )
+	{
+		assertEquals( -1, new PuzzleGenerator( 2, 3 ).rate( unsatisfiable(), new Trail() ) );
+	}
+}